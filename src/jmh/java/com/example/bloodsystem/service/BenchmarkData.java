@@ -0,0 +1,147 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.repository.DonorRepository;
+import com.example.bloodsystem.util.HlaUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试用的内存数据与组件装配 (不启动 Spring，不连接数据库)
+ */
+final class BenchmarkData {
+
+    static final String[] BLOOD_TYPES = {"A", "B", "O", "AB"};
+    static final String[] GENOTYPES = {"aa", "ab", "bb"};
+
+    private BenchmarkData() {}
+
+    static Donor randomDonor(Random r, String id) {
+        Donor d = new Donor();
+        d.setDonorId(id);
+        d.setName("供者" + id);
+        d.setBloodType(BLOOD_TYPES[r.nextInt(BLOOD_TYPES.length)]);
+        d.setHpa1(randomGenotype(r));
+        d.setHpa2(randomGenotype(r));
+        d.setHpa3(randomGenotype(r));
+        d.setHpa4(randomGenotype(r));
+        d.setHpa5(randomGenotype(r));
+        d.setHpa6(randomGenotype(r));
+        d.setHpa10(randomGenotype(r));
+        d.setHpa15(randomGenotype(r));
+        d.setHpa21(randomGenotype(r));
+        d.setHlaA1(randomHla(r, "A"));
+        d.setHlaA2(randomHla(r, "A"));
+        d.setHlaB1(randomHla(r, "B"));
+        d.setHlaB2(randomHla(r, "B"));
+        HlaUtils.fillSplitFields(d);
+        return d;
+    }
+
+    static Map<String, String> randomPatient(Random r, MatchConfig config) {
+        Map<String, String> gts = new HashMap<>();
+        for (String locus : config.getAllHpas()) {
+            if (r.nextInt(4) > 0) gts.put(locus, GENOTYPES[r.nextInt(GENOTYPES.length)]);
+        }
+        gts.put("HLA-A1", randomHla(r, "A"));
+        gts.put("HLA-A2", randomHla(r, "A"));
+        gts.put("HLA-B1", randomHla(r, "B"));
+        gts.put("HLA-B2", randomHla(r, "B"));
+        return gts;
+    }
+
+    static String randomAntibodies(Random r) {
+        return r.nextBoolean() ? "" : "A" + (1 + r.nextInt(80)) + ", B" + (1 + r.nextInt(80));
+    }
+
+    private static String randomGenotype(Random r) {
+        // 约 5% 未检测
+        return r.nextInt(20) == 0 ? null : GENOTYPES[r.nextInt(GENOTYPES.length)];
+    }
+
+    private static String randomHla(Random r, String locus) {
+        return String.format("%s*%02d:%02d", locus, 1 + r.nextInt(80), 1 + r.nextInt(20));
+    }
+
+    /**
+     * 装配 DonorService：索引直接由生成的供者构建，DonorRepository 用内存 Map 代替
+     */
+    static DonorService newDonorService(Map<String, Donor> donors, MatchConfig config,
+                                        MatchScoringPool pool) throws Exception {
+        DonorIndex index = new DonorIndex();
+        set(index, "loaded", true);
+        for (Donor d : donors.values()) index.upsert(d);
+
+        MatchResultCache cache = new MatchResultCache();
+        // 关闭结果缓存，每次都完整打分
+        set(cache, "maxEntries", 0);
+        set(cache, "maxTotalEntries", 0L);
+        set(cache, "ttlSeconds", 0L);
+
+        // 与线上一样记录各阶段耗时
+        MatchMetrics metrics = new MatchMetrics();
+        set(metrics, "registry", new SimpleMeterRegistry());
+        set(metrics, "resultCache", cache);
+        metrics.register();
+
+        MatchSnapshotStore snapshots = new MatchSnapshotStore();
+        set(snapshots, "ttlSeconds", 60L);
+        set(snapshots, "maxTotalEntries", 1_000_000L);
+
+        // 没有配型记录：使用统计为空
+        DonorUsageStats usage = new DonorUsageStats();
+        set(usage, "data", new ConcurrentHashMap<>());
+
+        DonorService service = new DonorService();
+        set(service, "repository", inMemoryRepository(donors));
+        set(service, "matchConfig", config);
+        set(service, "donorIndex", index);
+        set(service, "scoringPool", pool);
+        set(service, "resultCache", cache);
+        set(service, "metrics", metrics);
+        set(service, "snapshotStore", snapshots);
+        set(service, "donorUsage", usage);
+        set(service, "maxBatchPatients", 1000);
+        return service;
+    }
+
+    static MatchScoringPool newScoringPool(int threads) throws Exception {
+        MatchScoringPool pool = new MatchScoringPool();
+        set(pool, "threads", threads);
+        set(pool, "threshold", 20000);
+        set(pool, "chunkSize", 4096);
+        pool.start();
+        return pool;
+    }
+
+    // 只实现配型回表用到的 findAllById
+    private static DonorRepository inMemoryRepository(Map<String, Donor> donors) {
+        return (DonorRepository) Proxy.newProxyInstance(DonorRepository.class.getClassLoader(),
+                new Class<?>[]{DonorRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findAllById")) {
+                        List<Donor> found = new ArrayList<>();
+                        for (Object id : (Iterable<?>) args[0]) {
+                            Donor d = donors.get(id);
+                            if (d != null) found.add(d);
+                        }
+                        return found;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
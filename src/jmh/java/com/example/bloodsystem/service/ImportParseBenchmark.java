@@ -0,0 +1,50 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入解析基准：ImportService.parseLine 解析 Excel 复制出的 Tab 分隔行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImportParseBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private final ImportService importService = new ImportService();
+    private String[] rows;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(7L);
+        rows = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("供者").append(i).append('\t').append(String.format("D%08d", i));
+            for (int h = 0; h < 9; h++) {
+                // 偶尔出现空值或 "-"
+                int k = r.nextInt(12);
+                sb.append('\t').append(k == 0 ? "" : k == 1 ? "-" : BenchmarkData.GENOTYPES[k % 3]);
+            }
+            sb.append('\t').append(String.format("A*%02d:%02d", 1 + r.nextInt(80), 1 + r.nextInt(20)));
+            sb.append('\t').append(String.format("A*%02d", 1 + r.nextInt(80)));
+            sb.append('\t').append(String.format("B*%02d:%02d", 1 + r.nextInt(80), 1 + r.nextInt(20)));
+            sb.append('\t').append(String.format(" %02d：%02d ", 1 + r.nextInt(80), 1 + r.nextInt(20)));
+            rows[i] = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public Donor parseLine() {
+        return importService.parseLine(rows[next++ & (ROWS - 1)]);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配型基准：完整的 matchDonors (排名 + 明细 + 回表)，供者规模 1 万 ~ 100 万
+ * 结果缓存已关闭，多组患者条件轮流使用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MatchBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int donorCount;
+
+    // 并行打分线程数，0 = CPU 核数，1 = 串行
+    @Param({"0"})
+    public int threads;
+
+    private static final int QUERIES = 64;
+
+    private MatchScoringPool pool;
+    private DonorService service;
+    private String[] bloodTypes;
+    private Map<String, String>[] genotypes;
+    private String[] antibodies;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        Random r = new Random(20240601L);
+        MatchConfig config = new MatchConfig();
+
+        Map<String, Donor> donors = new HashMap<>(donorCount * 2);
+        for (int i = 0; i < donorCount; i++) {
+            String id = String.format("D%09d", i);
+            donors.put(id, BenchmarkData.randomDonor(r, id));
+        }
+        pool = BenchmarkData.newScoringPool(threads);
+        service = BenchmarkData.newDonorService(donors, config, pool);
+
+        bloodTypes = new String[QUERIES];
+        genotypes = new Map[QUERIES];
+        antibodies = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            bloodTypes[i] = BenchmarkData.BLOOD_TYPES[r.nextInt(BenchmarkData.BLOOD_TYPES.length)];
+            genotypes[i] = BenchmarkData.randomPatient(r, config);
+            antibodies[i] = BenchmarkData.randomAntibodies(r);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.stop();
+    }
+
+    @Benchmark
+    public List<MatchResult> matchTop50() {
+        int i = next++ & (QUERIES - 1);
+        return service.matchDonors(bloodTypes[i], genotypes[i], antibodies[i], true);
+    }
+
+    @Benchmark
+    public List<MatchResult> matchAll() {
+        int i = next++ & (QUERIES - 1);
+        return service.matchDonors(bloodTypes[i], genotypes[i], antibodies[i], false);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bloodsystem.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HLA 解析基准：单个分型 (各种书写格式) 与抗体列表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HlaParseBenchmark {
+
+    // 实际录入中常见的写法
+    private final String[] alleles = {
+            "A*02:01", "HLA-A*24:02", "B*40:01", "02:01", "11", " A*33:03 ", "B*46：01", "A2", "B*13:01:01", "A*02"
+    };
+
+    private final String antibodies = "A2, A24，B7 B13\nB46 A*11:01、B*40:01, A*33, 15";
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void parseHla(Blackhole bh) {
+        for (String allele : alleles) bh.consume(HlaUtils.parseHla(allele));
+    }
+
+    @Benchmark
+    public Object parseAntibodies() {
+        return HlaUtils.parseAntibodies(antibodies);
+    }
+
+    @Benchmark
+    public int[] parseAntibodyGroups() {
+        return HlaUtils.parseAntibodyGroups(antibodies);
+    }
+}
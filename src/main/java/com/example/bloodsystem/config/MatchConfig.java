@@ -1,7 +1,7 @@
 package com.example.bloodsystem.config;
 
+import com.example.bloodsystem.util.HpaCodec;
 import org.springframework.context.annotation.Configuration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,30 +13,50 @@ public class MatchConfig {
             "HPA-1", "HPA-2", "HPA-3", "HPA-4", "HPA-5", "HPA-6", "HPA-10", "HPA-15", "HPA-21"
     );
 
-    private final Set<String> criticalHpas = Set.of("HPA-1", "HPA-5", "HPA-15");
-
-    private final Map<String, Double> weights = new HashMap<>();
-    private final Map<String, Map<String, Integer>> compatMatrix = new HashMap<>();
+    private volatile MatchSettings settings;
+    // 🔥 打分内核：整体替换，正在进行的配型继续使用旧内核
+    private volatile ScoringKernel kernel;
 
     public MatchConfig() {
-        // HPA 权重配置 (虽然现在 Service 里写死了+5/+2，但保留此配置结构)
-        allHpas.forEach(h -> weights.put(h, 1.0));
+        MatchSettings s = new MatchSettings();
+
+        // HPA 权重配置
+        allHpas.forEach(h -> s.getWeights().put(h, 1.0));
+        s.getCriticalHpas().addAll(Set.of("HPA-1", "HPA-5", "HPA-15"));
 
         // HPA 兼容性矩阵 (0=不匹配, 1=兼容, 2=匹配)
-        compatMatrix.put("aa", Map.of("aa", 2, "ab", 1, "bb", 0));
-        compatMatrix.put("ab", Map.of("aa", 1, "ab", 2, "bb", 1));
-        compatMatrix.put("bb", Map.of("aa", 0, "ab", 1, "bb", 2));
+        s.getCompatMatrix().put("aa", Map.of("aa", 2, "ab", 1, "bb", 0));
+        s.getCompatMatrix().put("ab", Map.of("aa", 1, "ab", 2, "bb", 1));
+        s.getCompatMatrix().put("bb", Map.of("aa", 0, "ab", 1, "bb", 2));
+
+        reload(s);
     }
 
     public List<String> getAllHpas() { return allHpas; }
-    public Set<String> getCriticalHpas() { return criticalHpas; }
+    public Set<String> getCriticalHpas() { return settings.getCriticalHpas(); }
 
     public double getWeight(String locus) {
-        return weights.getOrDefault(locus, 1.0);
+        return settings.getWeights().getOrDefault(locus, 1.0);
     }
 
     public int getScore(String pVal, String dVal) {
         if (pVal == null || dVal == null) return 0;
-        return compatMatrix.getOrDefault(pVal, Map.of()).getOrDefault(dVal, 0);
+        return kernel.compat(HpaCodec.encode(pVal), HpaCodec.encode(dVal));
+    }
+
+    public ScoringKernel getKernel() { return kernel; }
+
+    public MatchSettings getSettings() { return settings.copy(); }
+
+    /**
+     * 编译新参数并替换内核，参数不合法时抛出 IllegalArgumentException 且不做任何修改
+     */
+    public synchronized ScoringKernel reload(MatchSettings newSettings) {
+        MatchSettings copy = newSettings.copy();
+        long generation = kernel == null ? 1 : kernel.generation() + 1;
+        ScoringKernel compiled = ScoringKernel.compile(copy, generation);
+        settings = copy;
+        kernel = compiled;
+        return compiled;
     }
-}
\ No newline at end of file
+}
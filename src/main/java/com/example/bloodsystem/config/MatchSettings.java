@@ -0,0 +1,44 @@
+package com.example.bloodsystem.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 配型打分参数 (可在运行时通过管理接口修改)
+ */
+@Data
+public class MatchSettings {
+    // HPA 位点权重，乘在匹配/兼容得分上
+    private Map<String, Double> weights = new HashMap<>();
+    // 关键 HPA 位点：不匹配时额外扣 criticalMismatchPenalty 分
+    private Set<String> criticalHpas = new HashSet<>();
+    // HPA 兼容性矩阵 (0=不匹配, 1=兼容, 2=匹配)
+    private Map<String, Map<String, Integer>> compatMatrix = new HashMap<>();
+
+    private double hlaMatchPoints = 100;
+    private double hpaMatchPoints = 5;
+    private double hpaCompatiblePoints = 2;
+    private double conflictPenalty = 1000;
+    private double criticalMismatchPenalty = 0;
+
+    public MatchSettings copy() {
+        MatchSettings s = new MatchSettings();
+        if (weights != null) s.setWeights(new HashMap<>(weights));
+        if (criticalHpas != null) s.setCriticalHpas(new HashSet<>(criticalHpas));
+        Map<String, Map<String, Integer>> matrix = new HashMap<>();
+        if (compatMatrix != null) compatMatrix.forEach((k, v) -> {
+            if (v != null) matrix.put(k, new HashMap<>(v));
+        });
+        s.setCompatMatrix(matrix);
+        s.setHlaMatchPoints(hlaMatchPoints);
+        s.setHpaMatchPoints(hpaMatchPoints);
+        s.setHpaCompatiblePoints(hpaCompatiblePoints);
+        s.setConflictPenalty(conflictPenalty);
+        s.setCriticalMismatchPenalty(criticalMismatchPenalty);
+        return s;
+    }
+}
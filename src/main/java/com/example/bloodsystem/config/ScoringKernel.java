@@ -0,0 +1,124 @@
+package com.example.bloodsystem.config;
+
+import com.example.bloodsystem.util.HpaCodec;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由 MatchSettings 编译出的不可变打分内核
+ * - HPA 基因型使用 HpaCodec 的小整数编码
+ * - 兼容性矩阵展开为一维 byte 表：compat[患者编码 * CODES + 供者编码]
+ * - 各位点 "不匹配/兼容/匹配" 得分展开为一维 double 表：points[位点 * 3 + 等级]
+ * 打分循环只做数组下标访问，不再查 HashMap。
+ */
+public final class ScoringKernel {
+
+    public static final int MISMATCHED = 0, COMPATIBLE = 1, MATCHED = 2;
+
+    private static final int CODES = HpaCodec.OTHER + 1;
+    private static final List<String> GENOTYPES = List.of("aa", "ab", "bb");
+
+    private final long generation;
+    private final byte[] compat = new byte[CODES * CODES];
+    private final double[] points = new double[HpaCodec.LOCI.size() * 3];
+    private final double[] maxPoints = new double[HpaCodec.LOCI.size()];
+    private final double hlaMatchPoints;
+    private final double conflictPenalty;
+    private final boolean bandsDisjoint;
+
+    private ScoringKernel(MatchSettings s, long generation) {
+        this.generation = generation;
+        this.hlaMatchPoints = s.getHlaMatchPoints();
+        this.conflictPenalty = s.getConflictPenalty();
+
+        s.getCompatMatrix().forEach((p, row) -> row.forEach((d, level) ->
+                compat[HpaCodec.encode(p) * CODES + HpaCodec.encode(d)] = level.byteValue()));
+        // 未检测 / 非标准写法一律按不匹配处理
+        for (int c = 0; c < CODES; c++) {
+            compat[HpaCodec.UNKNOWN * CODES + c] = MISMATCHED;
+            compat[HpaCodec.OTHER * CODES + c] = MISMATCHED;
+            compat[c * CODES + HpaCodec.UNKNOWN] = MISMATCHED;
+            compat[c * CODES + HpaCodec.OTHER] = MISMATCHED;
+        }
+
+        double maxHpa = 0, minHpa = 0;
+        List<String> loci = HpaCodec.LOCI;
+        for (int i = 0; i < loci.size(); i++) {
+            String locus = loci.get(i);
+            double w = s.getWeights().getOrDefault(locus, 1.0);
+            points[i * 3 + MATCHED] = w * s.getHpaMatchPoints();
+            points[i * 3 + COMPATIBLE] = w * s.getHpaCompatiblePoints();
+            points[i * 3 + MISMATCHED] = s.getCriticalHpas().contains(locus) ? -s.getCriticalMismatchPenalty() : 0;
+            maxPoints[i] = points[i * 3 + MATCHED];
+            maxHpa += Math.max(0, Math.max(points[i * 3 + MATCHED], points[i * 3 + COMPATIBLE]));
+            minHpa += Math.min(0, points[i * 3 + MISMATCHED]);
+        }
+
+        // HPA 总分的波动范围小于一条 HLA 匹配分、且冲突扣分足够大时，
+        // "HLA 匹配数" 与 "是否冲突" 划分出的分数档互不重叠，可以按档剪枝
+        double hpaRange = maxHpa - minHpa;
+        this.bandsDisjoint = hpaRange < hlaMatchPoints
+                && conflictPenalty > 4 * hlaMatchPoints + hpaRange;
+    }
+
+    public static ScoringKernel compile(MatchSettings settings, long generation) {
+        validate(settings);
+        return new ScoringKernel(settings, generation);
+    }
+
+    /**
+     * 提交的参数会整体替换当前参数，因此权重与兼容性矩阵必须完整：
+     * 缺少的位点或格子不会沿用旧值，只会在打分时静默变成 "不匹配"
+     */
+    private static void validate(MatchSettings s) {
+        for (Map.Entry<String, Double> e : s.getWeights().entrySet()) {
+            if (!HpaCodec.LOCI.contains(e.getKey())) throw new IllegalArgumentException("未知的 HPA 位点: " + e.getKey());
+            if (e.getValue() == null || e.getValue() < 0) throw new IllegalArgumentException("权重不能为负: " + e.getKey());
+        }
+        for (String locus : HpaCodec.LOCI) {
+            if (!s.getWeights().containsKey(locus)) throw new IllegalArgumentException("缺少 HPA 位点权重: " + locus);
+        }
+        for (String locus : s.getCriticalHpas()) {
+            if (!HpaCodec.LOCI.contains(locus)) throw new IllegalArgumentException("未知的 HPA 位点: " + locus);
+        }
+        s.getCompatMatrix().forEach((p, row) -> {
+            if (!GENOTYPES.contains(p)) throw new IllegalArgumentException("兼容性矩阵只能包含 aa/ab/bb: " + p);
+            row.forEach((d, level) -> {
+                if (!GENOTYPES.contains(d)) throw new IllegalArgumentException("兼容性矩阵只能包含 aa/ab/bb: " + p + "/" + d);
+                if (level == null || level < MISMATCHED || level > MATCHED) {
+                    throw new IllegalArgumentException("兼容性矩阵取值只能是 0/1/2: " + p + "/" + d);
+                }
+            });
+        });
+        for (String p : GENOTYPES) {
+            Map<String, Integer> row = s.getCompatMatrix().get(p);
+            for (String d : GENOTYPES) {
+                if (row == null || !row.containsKey(d)) throw new IllegalArgumentException("兼容性矩阵缺少: " + p + "/" + d);
+            }
+        }
+        if (s.getHlaMatchPoints() < 0 || s.getHpaMatchPoints() < 0 || s.getHpaCompatiblePoints() < 0
+                || s.getConflictPenalty() < 0 || s.getCriticalMismatchPenalty() < 0) {
+            throw new IllegalArgumentException("分值与扣分必须为非负数");
+        }
+    }
+
+    public long generation() { return generation; }
+
+    /** 兼容等级：MISMATCHED / COMPATIBLE / MATCHED */
+    public int compat(int patientCode, int donorCode) {
+        return compat[patientCode * CODES + donorCode];
+    }
+
+    public double points(int locusSlot, int level) {
+        return points[locusSlot * 3 + level];
+    }
+
+    public double maxPoints(int locusSlot) {
+        return maxPoints[locusSlot];
+    }
+
+    public double hlaMatchPoints() { return hlaMatchPoints; }
+    public double conflictPenalty() { return conflictPenalty; }
+    public boolean bandsDisjoint() { return bandsDisjoint; }
+}
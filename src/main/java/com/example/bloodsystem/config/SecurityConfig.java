@@ -1,5 +1,6 @@
 package com.example.bloodsystem.config;
 
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -21,6 +22,11 @@ public class SecurityConfig {
                 .authorizeHttpRequests((requests) -> requests
                         // 把 "/login" 加入放行列表
                         .requestMatchers("/css/**", "/js/**", "/images/**", "/webjars/**", "/login").permitAll()
+                        // 监控端点供 Prometheus 抓取：只在独立的管理端口 (仅监听内网地址) 上免登录，
+                        // 业务端口上不提供这些端点
+                        .requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
+                        // 管理接口仅限管理员
+                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
                         // 其他所有请求都需要登录认证
                         .anyRequest().authenticated()
                 )
@@ -0,0 +1,64 @@
+package com.example.bloodsystem.controller;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.MatchSettings;
+import com.example.bloodsystem.config.ScoringKernel;
+import com.example.bloodsystem.service.DonorUsageStats;
+import com.example.bloodsystem.service.MatchResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 管理接口 (仅 ADMIN 角色)
+ */
+@Controller
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired private MatchConfig matchConfig;
+    @Autowired private MatchResultCache resultCache;
+    @Autowired private DonorUsageStats donorUsage;
+
+    @GetMapping("/match-config")
+    @ResponseBody
+    public MatchSettings getMatchConfig() {
+        return matchConfig.getSettings();
+    }
+
+    // 🔥 热更新打分参数：编译新内核后整体替换，无需重启
+    @PostMapping("/match-config")
+    @ResponseBody
+    public ResponseEntity<?> updateMatchConfig(@RequestBody MatchSettings settings) {
+        try {
+            ScoringKernel kernel = matchConfig.reload(settings);
+            return ResponseEntity.ok(Map.of("generation", kernel.generation()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // 配型缓存命中率等统计
+    @GetMapping("/match-cache")
+    @ResponseBody
+    public Map<String, Object> getMatchCacheStats() {
+        return resultCache.stats();
+    }
+
+    @DeleteMapping("/match-cache")
+    @ResponseBody
+    public Map<String, Object> clearMatchCache() {
+        resultCache.clear();
+        return resultCache.stats();
+    }
+
+    // 由配型记录整表重建供者使用统计 (数据不一致时修复用)
+    @PostMapping("/donor-usage/rebuild")
+    @ResponseBody
+    public Map<String, Object> rebuildDonorUsage() {
+        return Map.of("donors", donorUsage.rebuild());
+    }
+}
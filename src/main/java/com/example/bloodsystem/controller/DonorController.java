@@ -1,21 +1,48 @@
 package com.example.bloodsystem.controller;
 
 import com.example.bloodsystem.entity.Donor;
-import com.example.bloodsystem.entity.MatchRecord;
 import com.example.bloodsystem.entity.Patient;
+import com.example.bloodsystem.service.BatchMatchRequest;
+import com.example.bloodsystem.service.CompactMatchResults;
 import com.example.bloodsystem.service.DonorService;
 import com.example.bloodsystem.service.DonorService.MatchResult;
+import com.example.bloodsystem.service.DonorUsageStats;
+import com.example.bloodsystem.service.ImportJobService;
 import com.example.bloodsystem.service.ImportResult;
+import com.example.bloodsystem.service.KeysetPage;
+import com.example.bloodsystem.service.MatchHistoryItem;
+import com.example.bloodsystem.service.MatchPage;
+import com.example.bloodsystem.service.MatchSlowLog;
+import com.example.bloodsystem.service.MatchTrace;
 import com.example.bloodsystem.service.PatientService;
+import com.example.bloodsystem.service.PurgeService;
+import com.example.bloodsystem.service.PurgeStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +51,13 @@ public class DonorController {
 
     @Autowired private DonorService service;
     @Autowired private PatientService patientService;
+    @Autowired private ImportJobService importJobService;
+    @Autowired private PurgeService purgeService;
+    @Autowired private DonorUsageStats donorUsage;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private MatchSlowLog slowLog;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
 
     @GetMapping("/login")
     public String loginPage() { return "login"; }
@@ -41,56 +75,134 @@ public class DonorController {
 
     @GetMapping("/donors")
     public String donorList(Model model,
-                            @RequestParam(defaultValue = "0") int page,
+                            @RequestParam(required = false) String cursor,
                             @RequestParam(defaultValue = "15") int size,
                             @RequestParam(required = false) String keyword) {
-        Page<Donor> p = service.getDonors(page, size, keyword);
+        KeysetPage<Donor> p;
+        try {
+            p = service.getDonors(cursor, size, keyword, true);
+        } catch (IllegalArgumentException e) {
+            return "redirect:/donors";
+        }
         model.addAttribute("donorPage", p);
-        model.addAttribute("donors", p.getContent());
+        model.addAttribute("donors", p.getItems());
         model.addAttribute("keyword", keyword);
+        model.addAttribute("purge", purgeService.active(PurgeService.DONORS));
         model.addAttribute("nav", "donors");
         return "donor_list";
     }
 
     @GetMapping("/patients")
     public String patientList(Model model,
-                              @RequestParam(defaultValue = "0") int page,
+                              @RequestParam(required = false) String cursor,
                               @RequestParam(defaultValue = "15") int size,
                               @RequestParam(required = false) String keyword) {
-        Page<Patient> p = patientService.getPatients(page, size, keyword);
+        KeysetPage<Patient> p;
+        try {
+            p = patientService.getPatients(cursor, size, keyword, true);
+        } catch (IllegalArgumentException e) {
+            return "redirect:/patients";
+        }
         model.addAttribute("patientPage", p);
-        model.addAttribute("patients", p.getContent());
+        model.addAttribute("patients", p.getItems());
         model.addAttribute("keyword", keyword);
+        model.addAttribute("purge", purgeService.active(PurgeService.PATIENTS));
         model.addAttribute("nav", "patients");
         return "patient_list";
     }
 
+    // 列表接口：键集分页，withTotal=true 时附带近似总数
+    @GetMapping("/api/donors")
+    @ResponseBody
+    public ResponseEntity<?> apiDonors(@RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "50") int size,
+                                       @RequestParam(required = false) String keyword,
+                                       @RequestParam(defaultValue = "false") boolean withTotal) {
+        try {
+            return ResponseEntity.ok(service.getDonors(cursor, size, keyword, withTotal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/api/patients")
+    @ResponseBody
+    public ResponseEntity<?> apiPatients(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "50") int size,
+                                         @RequestParam(required = false) String keyword,
+                                         @RequestParam(defaultValue = "false") boolean withTotal) {
+        try {
+            return ResponseEntity.ok(patientService.getPatients(cursor, size, keyword, withTotal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/profile/donor/{id}")
-    public String donorProfile(@PathVariable String id, Model model) {
+    public String donorProfile(@PathVariable String id, Model model,
+                               @RequestParam(required = false) String cursor) {
         Donor d = service.getDonorById(id);
         if (d == null) return "redirect:/donors";
-        List<MatchRecord> history = patientService.getHistoryByDonor(id);
+        KeysetPage<MatchHistoryItem> history;
+        try {
+            history = patientService.getDonorHistory(id, cursor, PatientService.HISTORY_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            return "redirect:/profile/donor/{id}";
+        }
 
         model.addAttribute("person", d);
+        model.addAttribute("usage", donorUsage.get(id));
         model.addAttribute("type", "donor");
-        model.addAttribute("history", history);
+        model.addAttribute("historyPage", history);
+        model.addAttribute("history", history.getItems());
         model.addAttribute("nav", "donors");
         return "profile";
     }
 
     @GetMapping("/profile/patient/{id}")
-    public String patientProfile(@PathVariable String id, Model model) {
+    public String patientProfile(@PathVariable String id, Model model,
+                                 @RequestParam(required = false) String cursor) {
         Patient p = patientService.getPatientById(id);
         if (p == null) return "redirect:/patients";
-        List<MatchRecord> history = patientService.getHistoryByPatient(id);
+        KeysetPage<MatchHistoryItem> history;
+        try {
+            history = patientService.getPatientHistory(id, cursor, PatientService.HISTORY_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            return "redirect:/profile/patient/{id}";
+        }
 
         model.addAttribute("person", p);
         model.addAttribute("type", "patient");
-        model.addAttribute("history", history);
+        model.addAttribute("historyPage", history);
+        model.addAttribute("history", history.getItems());
         model.addAttribute("nav", "patients");
         return "profile";
     }
 
+    @GetMapping("/api/donors/{id}/history")
+    @ResponseBody
+    public ResponseEntity<?> apiDonorHistory(@PathVariable String id,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(patientService.getDonorHistory(id, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/api/patients/{id}/history")
+    @ResponseBody
+    public ResponseEntity<?> apiPatientHistory(@PathVariable String id,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(patientService.getPatientHistory(id, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/add")
     public String add(Model model) {
         model.addAttribute("donor", new Donor());
@@ -146,33 +258,97 @@ public class DonorController {
         return "redirect:/patients";
     }
 
-    // 清空供者库
+    // 清空供者库 (后台分批删除，进度见列表页或 /api/purge/jobs/{jobId})
     @PostMapping("/reset")
-    public String reset(RedirectAttributes redirectAttributes) {
-        try {
-            service.deleteAllDonors();
-            redirectAttributes.addFlashAttribute("successMessage", "供者数据库已清空");
-        } catch (Exception e) {
-            redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
-        }
+    public String reset() {
+        purgeService.submit(PurgeService.DONORS);
         return "redirect:/donors";
     }
 
     // 🔥 新增：清空患者库
     @PostMapping("/reset/patients")
-    public String resetPatients(RedirectAttributes redirectAttributes) {
+    public String resetPatients() {
+        purgeService.submit(PurgeService.PATIENTS);
+        return "redirect:/patients";
+    }
+
+    @PostMapping("/api/purge/{target}")
+    @ResponseBody
+    public ResponseEntity<?> apiSubmitPurge(@PathVariable String target) {
         try {
-            patientService.deleteAllPatients();
-            redirectAttributes.addFlashAttribute("successMessage", "患者数据库已清空");
-        } catch (Exception e) {
-            redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
+            return ResponseEntity.ok(purgeService.submit(target));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
-        return "redirect:/patients";
+    }
+
+    @GetMapping("/api/purge/jobs/{jobId}")
+    @ResponseBody
+    public PurgeStatus apiPurgeStatus(@PathVariable String jobId) {
+        PurgeStatus status = purgeService.getStatus(jobId);
+        if (status == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "清空任务不存在");
+        return status;
     }
 
     @PostMapping("/import")
     public String impPost(@RequestParam("textData") String t, Model m) {
-        ImportResult result = service.importFromText(t);
+        m.addAttribute("message", importMessage(service.importFromText(t)));
+        return "import_data";
+    }
+
+    // 🔥 文件导入：TSV / CSV (可 gzip 压缩)，作为后台任务执行，页面轮询进度
+    @PostMapping("/import/file")
+    public String impFile(@RequestParam("file") MultipartFile file, Model m) {
+        if (file.isEmpty()) {
+            m.addAttribute("message", "请选择要导入的文件");
+            return "import_data";
+        }
+        try (InputStream in = file.getInputStream()) {
+            ImportResult job = importJobService.submit(in, file.getOriginalFilename());
+            m.addAttribute("jobId", job.getJobId());
+        } catch (IOException e) {
+            m.addAttribute("message", "读取文件失败: " + e.getMessage());
+        }
+        return "import_data";
+    }
+
+    @PostMapping("/api/import/jobs")
+    @ResponseBody
+    public ImportResult apiSubmitImport(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return importJobService.submit(in, file.getOriginalFilename());
+        }
+    }
+
+    @GetMapping("/api/import/jobs/{jobId}")
+    @ResponseBody
+    public ImportResult apiImportStatus(@PathVariable String jobId) {
+        ImportResult status = importJobService.getStatus(jobId);
+        if (status == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "导入任务不存在");
+        return status;
+    }
+
+    @PostMapping("/api/import/jobs/{jobId}/cancel")
+    @ResponseBody
+    public ResponseEntity<?> apiCancelImport(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(importJobService.cancel(jobId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/api/import/jobs/{jobId}/resume")
+    @ResponseBody
+    public ResponseEntity<?> apiResumeImport(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(importJobService.resume(jobId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private String importMessage(ImportResult result) {
         StringBuilder msg = new StringBuilder();
         msg.append("成功导入 ").append(result.getSuccessCount()).append(" 条数据。");
         if (result.getFailureCount() > 0) {
@@ -180,19 +356,166 @@ public class DonorController {
             msg.append(" <br/>错误详情（前100条）：<br/>");
             msg.append(String.join("<br/>", result.getErrorMessages()));
         }
-        m.addAttribute("message", msg.toString());
-        return "import_data";
+        return msg.toString();
     }
 
     // --- API 部分 ---
 
+    // 传 pageSize 时返回分页结果 (MatchPage)，之后用 nextCursor 翻页；否则保持原来的列表返回
+    // explain=true 时返回 {result, explain}，explain 为各阶段耗时与候选数
+    // compact=true 时返回精简格式 (CompactMatchResults)；列表结果带 ETag，带 If-None-Match 的请求在数据未变时返回 304
+    // 分页结果不带 ETag (首页每次生成新的快照游标，304 会让客户端继续使用可能已过期的旧游标)
+    // 只接受 POST：检索条件含患者的血型、基因型与抗体，不放进 URL (访问日志、代理、浏览器历史)
     @PostMapping("/api/match")
     @ResponseBody
-    public List<MatchResult> apiMatch(@RequestParam(required = false) String bloodType,
-                                      @RequestParam(required = false) String antibodies,
-                                      @RequestParam(required = false, defaultValue = "false") boolean limitResult,
-                                      @RequestParam Map<String, String> allParams) {
-        return service.matchDonors(bloodType, parseParams(allParams), antibodies, limitResult);
+    public Object apiMatch(@RequestParam(required = false) String bloodType,
+                           @RequestParam(required = false) String antibodies,
+                           @RequestParam(required = false, defaultValue = "false") boolean limitResult,
+                           @RequestParam(required = false) Integer pageSize,
+                           @RequestParam(required = false) String cursor,
+                           @RequestParam(required = false, defaultValue = "false") boolean explain,
+                           @RequestParam(required = false) String sort,
+                           @RequestParam(required = false, defaultValue = "false") boolean compact,
+                           @RequestHeader HttpHeaders headers,
+                           @RequestParam Map<String, String> allParams) throws IOException {
+        // 按使用统计排序只作用于完整结果列表，分页结果保持分数顺序
+        Comparator<MatchResult> order;
+        try {
+            order = DonorService.usageOrder(sort);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        if (order != null && (pageSize != null || (cursor != null && !cursor.isEmpty()))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "分页结果只支持按分数排序"));
+        }
+
+        if (cursor != null && !cursor.isEmpty()) {
+            MatchPage page;
+            try {
+                page = service.matchNextPage(cursor, pageSize != null ? pageSize : DEFAULT_PAGE_SIZE);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            if (page == null) throw new ResponseStatusException(HttpStatus.GONE, "配型结果已过期，请重新检索");
+            return compact ? service.compact(page) : page;
+        }
+
+        // 分页的首页每次生成新的快照游标，explain 含本次耗时，二者都不做条件请求
+        String etag = null;
+        if (pageSize == null && !explain) {
+            etag = service.matchEtag(bloodType, parseParams(allParams), antibodies, limitResult,
+                    "compact=" + compact + ",sort=" + (order != null ? sort : "score"));
+            if (etagMatches(headers, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+                        .cacheControl(CacheControl.noCache().cachePrivate()).build();
+            }
+        }
+
+        MatchTrace trace = MatchTrace.start();
+        byte[] json;
+        try {
+            Object result;
+            if (pageSize != null) {
+                MatchPage page = service.matchFirstPage(bloodType, parseParams(allParams), antibodies, limitResult, pageSize);
+                result = compact ? service.compact(page) : page;
+            } else {
+                List<MatchResult> list = service.matchDonors(bloodType, parseParams(allParams), antibodies, limitResult);
+                if (order != null) list.sort(order);
+                result = compact ? service.compact(list) : list;
+            }
+            // 在这里序列化，序列化耗时才能计入
+            long start = System.nanoTime();
+            json = objectMapper.writeValueAsBytes(result);
+            trace.serialized(System.nanoTime() - start, json.length);
+        } finally {
+            trace.finish();
+        }
+        slowLog.record(trace);
+
+        if (explain) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("result", new RawValue(new String(json, StandardCharsets.UTF_8)));
+            body.put("explain", trace.toMap());
+            json = objectMapper.writeValueAsBytes(body);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (etag != null) response.eTag(etag).cacheControl(CacheControl.noCache().cachePrivate());
+        return response.body(json);
+    }
+
+    // If-None-Match 可以是 "*" 或以逗号分隔的多个 ETag；按弱比较 (忽略 W/ 前缀)，格式错误时视为不匹配
+    private static boolean etagMatches(HttpHeaders headers, String etag) {
+        List<String> tags;
+        try {
+            tags = headers.getIfNoneMatch();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String tag : tags) {
+            if ("*".equals(tag)) return true;
+            if ((tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    // 🔥 流式配型：NDJSON (默认) 或 SSE，按名次从高到低逐条输出
+    // compact=true 时先输出位点字典 (NDJSON 的第一行 / SSE 的 dictionary 事件)，之后每条为精简格式
+    @PostMapping("/api/match/stream")
+    public ResponseEntity<StreamingResponseBody> apiMatchStream(@RequestParam(required = false) String bloodType,
+                                                                @RequestParam(required = false) String antibodies,
+                                                                @RequestParam(required = false, defaultValue = "false") boolean limitResult,
+                                                                @RequestParam(required = false, defaultValue = "ndjson") String format,
+                                                                @RequestParam(required = false, defaultValue = "false") boolean compact,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                @RequestParam Map<String, String> allParams) {
+        boolean sse = "sse".equalsIgnoreCase(format) || (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE));
+        Map<String, String> pGts = parseParams(allParams);
+
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            int[] count = {0};
+            CompactMatchResults dict = compact ? service.compactDictionary() : null;
+            if (dict != null) {
+                String json = objectMapper.writeValueAsString(dict);
+                writer.write(sse ? "event: dictionary\ndata: " + json + "\n\n" : json + "\n");
+            }
+            service.streamMatches(bloodType, pGts, antibodies, limitResult, r -> {
+                String json = objectMapper.writeValueAsString(dict != null ? dict.item(r) : r);
+                writer.write(sse ? "data: " + json + "\n\n" : json + "\n");
+                // 前几条立即推送，之后按缓冲区刷新
+                if (++count[0] <= 20) writer.flush();
+            });
+            if (sse) writer.write("event: end\ndata: " + count[0] + "\n\n");
+            writer.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(sse ? MediaType.TEXT_EVENT_STREAM : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(body);
+    }
+
+    // 🔥 批量配型：一次遍历供者库，为多名患者同时出结果 (用于夜间批量重配)
+    @PostMapping("/api/match/batch")
+    @ResponseBody
+    public ResponseEntity<?> apiMatchBatch(@RequestBody BatchMatchRequest request) {
+        try {
+            return ResponseEntity.ok(service.matchBatch(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/api/match-records/{id}/status")
+    @ResponseBody
+    public ResponseEntity<?> apiUpdateRecordStatus(@PathVariable Long id, @RequestParam String status) {
+        try {
+            patientService.updateRecordStatus(id, status);
+            return ResponseEntity.ok(Map.of("id", id, "status", status));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @PostMapping("/api/confirmMatch")
@@ -44,6 +44,9 @@ public class Donor {
     @Column(length = 10) private String hpa15;
     @Column(length = 10) private String hpa21;
 
+    // HPA 打包编码 (每位点 3 位，见 HpaCodec)，随上面各列一起写入
+    @Column(name = "hpa_code") private Integer hpaCode;
+
     // --- HLA 原始字符串 ---
     @Column(length = 20, name = "hla_a1") private String hlaA1;
     @Column(length = 20, name = "hla_a2") private String hlaA2;
@@ -77,7 +80,8 @@ public class Donor {
 
     public String getGenotype(String locus) {
         if (locus == null) return null;
-        switch (locus.toUpperCase()) {
+        // 调用方传入的位点名一般已是大写，先直接匹配，避免每次调用都生成新字符串
+        switch (locus) {
             case "HPA-1": return hpa1;
             case "HPA-2": return hpa2;
             case "HPA-3": return hpa3;
@@ -91,7 +95,9 @@ public class Donor {
             case "HLA-A2": return hlaA2;
             case "HLA-B1": return hlaB1;
             case "HLA-B2": return hlaB2;
-            default: return null;
+            default:
+                String upper = locus.toUpperCase();
+                return upper.equals(locus) ? null : getGenotype(upper);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.bloodsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 供者变更流水 (多实例部署时同步各节点的内存索引/缓存)
+ * 与供者数据在同一事务中写入，各节点按自增 ID 顺序追读。
+ */
+@Data
+@Entity
+@Table(name = "donor_changes", indexes = {
+        @Index(name = "idx_dc_created", columnList = "created_at")
+})
+public class DonorChange {
+
+    // 操作: UPSERT(新增/修改), DELETE(删除)；清空供者库按批写入 DELETE
+    public static final String UPSERT = "UPSERT";
+    public static final String DELETE = "DELETE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 50, name = "donor_id")
+    private String donorId;
+
+    @Column(length = 10)
+    private String op;
+
+    // 产生该变更的节点 (本节点的变更已在提交后直接应用，追读时跳过)
+    @Column(length = 50, name = "node_id")
+    private String nodeId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,30 @@
+package com.example.bloodsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 供者使用统计 (由 match_records 汇总而来，随确认配型、状态变更增量维护)
+ * 没有配型记录的供者没有对应行。数据不一致时可整表重建。
+ */
+@Data
+@Entity
+@Table(name = "donor_usage")
+public class DonorUsage {
+
+    @Id
+    @Column(length = 50, name = "donor_id")
+    private String donorId;
+
+    // 被选中 (确认配型) 的次数，即配型记录数
+    @Column(name = "selection_count", nullable = false)
+    private int selectionCount;
+
+    // 其中已输血的次数
+    @Column(name = "transfused_count", nullable = false)
+    private int transfusedCount;
+
+    @Column(name = "last_match_date")
+    private LocalDateTime lastMatchDate;
+}
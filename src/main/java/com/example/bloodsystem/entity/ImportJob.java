@@ -0,0 +1,76 @@
+package com.example.bloodsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 后台导入任务
+ * checkpointLine 为最后一个已提交批次的末行行号，与该批数据在同一事务中更新，
+ * 任务中断后从下一行继续，已提交的数据不会重复导入。
+ * 进行中的任务归属于一个节点，该节点定期续约；租约过期 (节点已停止) 后其他节点才能接管。
+ */
+@Data
+@Entity
+@Table(name = "import_jobs", indexes = {
+        @Index(name = "idx_ij_status", columnList = "status")
+})
+public class ImportJob {
+
+    // 状态: QUEUED(排队), RUNNING(导入中), COMPLETED(完成), FAILED(失败), CANCELLED(已取消)
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    @Id
+    @Column(length = 50, name = "job_id")
+    private String jobId;
+
+    private String filename;
+
+    // 上传文件的落盘路径，完成后删除；取消 / 失败的任务超过保留时长后删除并置空
+    @Column(length = 500, name = "spool_path")
+    private String spoolPath;
+
+    @Column(length = 20)
+    private String status;
+
+    // 执行该任务的节点 (feed.node-id) 与租约到期时间
+    @Column(length = 50, name = "owner_node")
+    private String ownerNode;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "checkpoint_line")
+    private Long checkpointLine = 0L;
+
+    @Column(name = "success_count")
+    private Integer successCount = 0;
+
+    @Column(name = "failure_count")
+    private Integer failureCount = 0;
+
+    @Column(length = 500, name = "last_error")
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) createdAt = LocalDateTime.now();
+        if (jobId == null) jobId = UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
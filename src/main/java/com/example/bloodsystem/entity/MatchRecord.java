@@ -7,10 +7,16 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "match_records", indexes = {
-        @Index(name = "idx_mr_patient", columnList = "patient_id"),
-        @Index(name = "idx_mr_donor", columnList = "donor_id")
+        // 档案页历史按 (对方, matchDate, id) 定位，同时作为外键索引
+        @Index(name = "idx_mr_patient_date", columnList = "patient_id, matchDate, id"),
+        @Index(name = "idx_mr_donor_date", columnList = "donor_id, matchDate, id")
 })
 public class MatchRecord {
+
+    // 状态: SELECTED(已选中), TRANSFUSED(已输血)
+    public static final String SELECTED = "SELECTED";
+    public static final String TRANSFUSED = "TRANSFUSED";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -31,12 +37,11 @@ public class MatchRecord {
     private Double score;
     private String grade;
 
-    // 状态: SELECTED(已选中), TRANSFUSED(已输血)
     private String status;
 
     @PrePersist
     protected void onCreate() {
         if (matchDate == null) matchDate = LocalDateTime.now();
-        if (status == null) status = "SELECTED";
+        if (status == null) status = SELECTED;
     }
 }
\ No newline at end of file
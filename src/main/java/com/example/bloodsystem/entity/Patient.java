@@ -11,11 +11,13 @@ import java.util.UUID;
 @Entity
 @Table(name = "patients", indexes = {
         @Index(name = "idx_p_name", columnList = "name"),
-        @Index(name = "idx_p_blood", columnList = "blood_type")
+        @Index(name = "idx_p_blood", columnList = "blood_type"),
+        // 列表键集分页
+        @Index(name = "idx_p_created", columnList = "created_at, patient_id")
 })
 public class Patient {
     @Id
-    @Column(length = 50)
+    @Column(length = 50, name = "patient_id")
     private String patientId;
 
     @Column(nullable = false)
@@ -41,13 +43,17 @@ public class Patient {
     @Column(length = 10) private String hpa15;
     @Column(length = 10) private String hpa21;
 
+    // HPA 打包编码 (每位点 3 位，见 HpaCodec)，随上面各列一起写入
+    @Column(name = "hpa_code") private Integer hpaCode;
+
     // --- HLA ---
     @Column(length = 20) private String hlaA1;
     @Column(length = 20) private String hlaA2;
     @Column(length = 20) private String hlaB1;
     @Column(length = 20) private String hlaB2;
 
-    @Column(name = "created_at")
+    // 列表键集分页的排序键，不能为空 (早期数据的空值在启动时回填)
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
     @Column(name = "updated_at")
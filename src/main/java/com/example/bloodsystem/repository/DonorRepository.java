@@ -1,13 +1,21 @@
 package com.example.bloodsystem.repository;
 
 import com.example.bloodsystem.entity.Donor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface DonorRepository extends JpaRepository<Donor, String>, JpaSpecificationExecutor<Donor> {
-    @Query("SELECT d FROM Donor d WHERE d.donorId LIKE %?1% OR d.name LIKE %?1%")
-    Page<Donor> search(String keyword, Pageable pageable);
+    // --- 键集分页 (按 donorId 倒序)：pageable 只用来限制条数，返回 List 不会触发 COUNT ---
+
+    // after 为 null 时取第一页
+    @Query("SELECT d FROM Donor d WHERE (?1 IS NULL OR d.donorId < ?1) ORDER BY d.donorId DESC")
+    List<Donor> findPageAfter(String after, Pageable limit);
+
+    // 上一页：按升序取紧邻 before 的若干条，调用方再反转
+    @Query("SELECT d FROM Donor d WHERE d.donorId > ?1 ORDER BY d.donorId ASC")
+    List<Donor> findPageBefore(String before, Pageable limit);
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.example.bloodsystem.repository;
+
+import com.example.bloodsystem.entity.DonorUsage;
+import com.example.bloodsystem.entity.MatchRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 供者使用统计 (donor_usage) 的读写
+ * 增量更新用单条 SQL 完成，不先读后写；按供者重算与整表重建直接由 match_records 聚合。
+ * 写操作需在事务内调用 (与对应的配型记录变更同一事务)。
+ */
+@Repository
+public class DonorUsageRepository {
+
+    private static final String SELECT_SQL =
+            "SELECT donor_id, selection_count, transfused_count, last_match_date FROM donor_usage";
+
+    private static final String AGGREGATE_SQL = "INSERT INTO donor_usage " +
+            "(donor_id, selection_count, transfused_count, last_match_date) " +
+            "SELECT donor_id, COUNT(*), SUM(CASE WHEN status = '" + MatchRecord.TRANSFUSED + "' THEN 1 ELSE 0 END), " +
+            "MAX(match_date) FROM match_records WHERE donor_id IS NOT NULL ";
+
+    private static final RowMapper<DonorUsage> ROW_MAPPER = (rs, rowNum) -> {
+        DonorUsage u = new DonorUsage();
+        u.setDonorId(rs.getString(1));
+        u.setSelectionCount(rs.getInt(2));
+        u.setTransfusedCount(rs.getInt(3));
+        Timestamp ts = rs.getTimestamp(4);
+        u.setLastMatchDate(ts != null ? ts.toLocalDateTime() : null);
+        return u;
+    };
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // 新增一条配型记录 (状态为 SELECTED)
+    public void addSelection(String donorId, LocalDateTime matchDate) {
+        jdbcTemplate.update("INSERT INTO donor_usage (donor_id, selection_count, transfused_count, last_match_date) " +
+                "VALUES (?, 1, 0, ?) AS new ON DUPLICATE KEY UPDATE selection_count = donor_usage.selection_count + 1, " +
+                "last_match_date = GREATEST(COALESCE(donor_usage.last_match_date, new.last_match_date), new.last_match_date)",
+                donorId, Timestamp.valueOf(matchDate));
+    }
+
+    // 配型记录在 SELECTED 与 TRANSFUSED 之间变更 (delta 为 +1 / -1)；返回更新的行数，该供者没有统计行时为 0
+    public int addTransfused(String donorId, int delta) {
+        return jdbcTemplate.update("UPDATE donor_usage SET transfused_count = transfused_count + ? WHERE donor_id = ?",
+                delta, donorId);
+    }
+
+    public void deleteAll(Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return;
+        namedJdbcTemplate.update("DELETE FROM donor_usage WHERE donor_id IN (:ids)",
+                new MapSqlParameterSource("ids", donorIds));
+    }
+
+    /**
+     * 按当前的配型记录重算这些供者 (删除配型记录后调用)
+     */
+    public void recompute(Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return;
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", donorIds);
+        namedJdbcTemplate.update("DELETE FROM donor_usage WHERE donor_id IN (:ids)", ids);
+        namedJdbcTemplate.update(AGGREGATE_SQL + "AND donor_id IN (:ids) GROUP BY donor_id", ids);
+    }
+
+    /**
+     * 表为空而已有配型记录时 (从没有使用统计的版本升级)，由配型记录回填；返回回填的行数
+     * 只补缺失的供者，多个节点同时启动时重复执行也不会覆盖已有的行
+     */
+    public int backfillIfEmpty() {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT donor_id FROM donor_usage LIMIT 1) t", Integer.class);
+        if (existing != null && existing > 0) return 0;
+        return jdbcTemplate.update(AGGREGATE_SQL +
+                "AND donor_id NOT IN (SELECT donor_id FROM donor_usage) GROUP BY donor_id");
+    }
+
+    /**
+     * 整表重建，返回重建后的行数
+     */
+    public int rebuild() {
+        jdbcTemplate.update("DELETE FROM donor_usage");
+        return jdbcTemplate.update(AGGREGATE_SQL + "GROUP BY donor_id");
+    }
+
+    public List<DonorUsage> findAll(Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return List.of();
+        return namedJdbcTemplate.query(SELECT_SQL + " WHERE donor_id IN (:ids)",
+                new MapSqlParameterSource("ids", donorIds), ROW_MAPPER);
+    }
+
+    public void forEach(Consumer<DonorUsage> action) {
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            action.accept(ROW_MAPPER.mapRow(rs, 0));
+        });
+    }
+}
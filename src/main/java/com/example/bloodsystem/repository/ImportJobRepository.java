@@ -0,0 +1,44 @@
+package com.example.bloodsystem.repository;
+
+import com.example.bloodsystem.entity.ImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, String> {
+
+    // 启动时 / 定期查找被中断的任务
+    List<ImportJob> findByStatusIn(Collection<String> statuses);
+
+    // 认领任务：本节点的任务，或租约已过期 (所属节点已停止) 的任务；返回 0 表示已被其他节点持有
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.ownerNode = ?2, j.leaseUntil = ?3 WHERE j.jobId = ?1 " +
+            "AND (j.ownerNode = ?2 OR j.leaseUntil IS NULL OR j.leaseUntil < ?4)")
+    int claim(String jobId, String nodeId, LocalDateTime leaseUntil, LocalDateTime now);
+
+    // 续约本节点进行中的任务
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.leaseUntil = ?2 WHERE j.ownerNode = ?1 AND j.status IN ?3")
+    int renewLeases(String nodeId, LocalDateTime leaseUntil, Collection<String> statuses);
+
+    // 清理已结束任务的上传文件：结束时间早于 before 且仍记录着落盘路径
+    @Query("SELECT j FROM ImportJob j WHERE j.status IN ?1 AND j.spoolPath IS NOT NULL " +
+            "AND COALESCE(j.updatedAt, j.createdAt) < ?2")
+    List<ImportJob> findEndedBefore(Collection<String> statuses, LocalDateTime before);
+
+    // 批次提交时在同一事务内更新检查点
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.checkpointLine = ?2, j.successCount = ?3, j.failureCount = ?4, " +
+            "j.updatedAt = CURRENT_TIMESTAMP WHERE j.jobId = ?1")
+    int saveCheckpoint(String jobId, long checkpointLine, int successCount, int failureCount);
+}
@@ -1,16 +1,65 @@
 package com.example.bloodsystem.repository;
 
 import com.example.bloodsystem.entity.MatchRecord;
+import com.example.bloodsystem.service.MatchHistoryItem;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface MatchRecordRepository extends JpaRepository<MatchRecord, Long> {
 
-    // 查询某供者的所有捐献历史，按时间倒序
-    List<MatchRecord> findByDonorDonorIdOrderByMatchDateDesc(String donorId);
+    // --- 档案页历史 (按 matchDate、id 倒序的键集分页)：只查页面显示的列，对方的 ID 与姓名由 JOIN 一并取出 ---
+
+    String DONOR_HISTORY = "SELECT new com.example.bloodsystem.service.MatchHistoryItem(" +
+            "r.id, r.matchDate, r.score, r.grade, r.status, p.patientId, p.name) " +
+            "FROM MatchRecord r JOIN r.patient p WHERE r.donor.donorId = ?1 ";
+
+    String PATIENT_HISTORY = "SELECT new com.example.bloodsystem.service.MatchHistoryItem(" +
+            "r.id, r.matchDate, r.score, r.grade, r.status, d.donorId, d.name) " +
+            "FROM MatchRecord r JOIN r.donor d WHERE r.patient.patientId = ?1 ";
+
+    String AFTER = "AND (r.matchDate < ?2 OR (r.matchDate = ?2 AND r.id < ?3)) ";
+    String BEFORE = "AND (r.matchDate > ?2 OR (r.matchDate = ?2 AND r.id > ?3)) ";
+    String DESC = "ORDER BY r.matchDate DESC, r.id DESC";
+    // 上一页：按升序取紧邻边界的若干条，调用方再反转
+    String ASC = "ORDER BY r.matchDate ASC, r.id ASC";
+
+    // 某供者的捐献历史
+    @Query(DONOR_HISTORY + DESC)
+    List<MatchHistoryItem> findDonorHistory(String donorId, Pageable limit);
+
+    @Query(DONOR_HISTORY + AFTER + DESC)
+    List<MatchHistoryItem> findDonorHistoryAfter(String donorId, LocalDateTime matchDate, Long id, Pageable limit);
+
+    @Query(DONOR_HISTORY + BEFORE + ASC)
+    List<MatchHistoryItem> findDonorHistoryBefore(String donorId, LocalDateTime matchDate, Long id, Pageable limit);
+
+    // 某患者的受血历史
+    @Query(PATIENT_HISTORY + DESC)
+    List<MatchHistoryItem> findPatientHistory(String patientId, Pageable limit);
+
+    @Query(PATIENT_HISTORY + AFTER + DESC)
+    List<MatchHistoryItem> findPatientHistoryAfter(String patientId, LocalDateTime matchDate, Long id, Pageable limit);
+
+    @Query(PATIENT_HISTORY + BEFORE + ASC)
+    List<MatchHistoryItem> findPatientHistoryBefore(String patientId, LocalDateTime matchDate, Long id, Pageable limit);
+
+    // 某患者的配型记录涉及的供者 (删除前用于更新供者使用统计)
+    @Query("SELECT DISTINCT r.donor.donorId FROM MatchRecord r WHERE r.patient.patientId = ?1")
+    List<String> findDonorIdsByPatientId(String patientId);
+
+    // 按供者 / 患者整体删除配型记录 (一条 DELETE 语句，不逐条加载实体)
+    @Modifying
+    @Query("DELETE FROM MatchRecord r WHERE r.donor.donorId = ?1")
+    int deleteByDonorId(String donorId);
 
-    // 查询某患者的所有受血历史，按时间倒序
-    List<MatchRecord> findByPatientPatientIdOrderByMatchDateDesc(String patientId);
+    @Modifying
+    @Query("DELETE FROM MatchRecord r WHERE r.patient.patientId = ?1")
+    int deleteByPatientId(String patientId);
 }
\ No newline at end of file
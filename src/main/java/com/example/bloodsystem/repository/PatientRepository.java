@@ -1,12 +1,14 @@
 package com.example.bloodsystem.repository;
 
 import com.example.bloodsystem.entity.Patient;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,7 +17,22 @@ public interface PatientRepository extends JpaRepository<Patient, String> {
     // 根据姓名查找患者，用于自动查重
     Optional<Patient> findByName(String name);
 
-    // 搜索功能
-    @Query("SELECT p FROM Patient p WHERE p.name LIKE %?1% OR p.patientId LIKE %?1%")
-    Page<Patient> search(String keyword, Pageable pageable);
+    // --- 键集分页 (按 createdAt、patientId 倒序)：pageable 只用来限制条数，返回 List 不会触发 COUNT ---
+
+    @Query("SELECT p FROM Patient p ORDER BY p.createdAt DESC, p.patientId DESC")
+    List<Patient> findFirstPage(Pageable limit);
+
+    @Query("SELECT p FROM Patient p WHERE p.createdAt < ?1 OR (p.createdAt = ?1 AND p.patientId < ?2) " +
+            "ORDER BY p.createdAt DESC, p.patientId DESC")
+    List<Patient> findPageAfter(LocalDateTime createdAt, String patientId, Pageable limit);
+
+    // 上一页：按升序取紧邻边界的若干条，调用方再反转
+    @Query("SELECT p FROM Patient p WHERE p.createdAt > ?1 OR (p.createdAt = ?1 AND p.patientId > ?2) " +
+            "ORDER BY p.createdAt ASC, p.patientId ASC")
+    List<Patient> findPageBefore(LocalDateTime createdAt, String patientId, Pageable limit);
+
+    // 回填缺少建档时间的患者 (早期数据)：优先用修改时间，没有则用 fallback
+    @Modifying
+    @Query("UPDATE Patient p SET p.createdAt = COALESCE(p.updatedAt, ?1) WHERE p.createdAt IS NULL")
+    int backfillCreatedAt(LocalDateTime fallback);
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.example.bloodsystem.service;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量配型请求
+ * patientIds 为已登记的患者；patients 为直接提交的患者资料，两者可同时使用
+ */
+@Data
+public class BatchMatchRequest {
+    private List<String> patientIds = new ArrayList<>();
+    private List<Profile> patients = new ArrayList<>();
+    private boolean limitResult = true;
+
+    @Data
+    public static class Profile {
+        // 仅用于在结果中标识该患者，可为空
+        private String patientId;
+        private String bloodType;
+        private String antibodies;
+        // 键与单次配型一致：HPA-1 ... HPA-21、HLA-A1、HLA-A2、HLA-B1、HLA-B2
+        private Map<String, String> genotypes = new HashMap<>();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量配型中单个患者的结果 (顺序与请求中的患者顺序一致)
+ */
+@Data
+public class BatchMatchResult {
+    private String patientId;
+    private List<MatchResult> results;
+}
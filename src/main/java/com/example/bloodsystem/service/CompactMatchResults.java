@@ -0,0 +1,119 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 配型结果的精简格式 (compact=true)
+ * 不再嵌入完整的 Donor 实体，也不逐条重复位点名称：
+ * 位点字典只发送一次，每条结果的 matched / compatible / mismatched / unknown
+ * 是字典下标的位掩码 (第 i 位对应 loci[i])，highlighted 对应 alleles；
+ * hla 按 A1、A2、B1、B2 排列，hpa 按 hpaLoci 排列 (未分型为 null)。
+ * 位掩码不超过 31 位，JavaScript 的位运算可直接使用。
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompactMatchResults {
+
+    static final List<String> ALLELES = List.of("HLA-A1", "HLA-A2", "HLA-B1", "HLA-B2");
+
+    private List<String> loci;
+    private List<String> alleles;
+    private List<String> hpaLoci;
+    // 流式输出时字典单独作为第一行，此时为 null
+    private List<Item> results;
+
+    // --- 分页时 ---
+    private String nextCursor;
+    private Integer offset;
+    private Integer total;
+    private Boolean truncated;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item {
+        private String id;
+        private String name;
+        private String bloodType;
+        private double score;
+        private double rate;
+        private String grade;
+        private int matched;
+        private int compatible;
+        private int mismatched;
+        private int unknown;
+        private int highlighted;
+        // 只在被排除 (存在排斥抗原冲突) 时给出
+        private List<String> conflicts;
+        private String[] hla;
+        private String[] hpa;
+        private int selectionCount;
+        private int transfusedCount;
+        private LocalDateTime lastMatchDate;
+    }
+
+    /**
+     * 只含字典的头部 (流式输出的第一行)
+     */
+    static CompactMatchResults dictionary(List<String> hpaLoci) {
+        if (hpaLoci.size() + 2 > 31) throw new IllegalStateException("位点数超过位掩码容量");
+        List<String> loci = new ArrayList<>(hpaLoci.size() + 2);
+        loci.add("HLA-A");
+        loci.add("HLA-B");
+        loci.addAll(hpaLoci);
+
+        CompactMatchResults c = new CompactMatchResults();
+        c.setLoci(loci);
+        c.setAlleles(ALLELES);
+        c.setHpaLoci(hpaLoci);
+        return c;
+    }
+
+    static CompactMatchResults of(List<MatchResult> results, List<String> hpaLoci) {
+        CompactMatchResults c = dictionary(hpaLoci);
+        List<Item> items = new ArrayList<>(results.size());
+        for (MatchResult r : results) items.add(c.item(r));
+        c.setResults(items);
+        return c;
+    }
+
+    public Item item(MatchResult r) {
+        Donor d = r.donor;
+        Item it = new Item();
+        it.setId(r.donorId);
+        it.setName(d.getName());
+        it.setBloodType(d.getBloodType());
+        it.setScore(r.score);
+        it.setRate(r.rate);
+        it.setGrade(r.grade);
+        it.setMatched(mask(r.matchedLoci, loci));
+        it.setCompatible(mask(r.compatibleLoci, loci));
+        it.setMismatched(mask(r.mismatchedLoci, loci));
+        it.setUnknown(mask(r.unknownLoci, loci));
+        it.setHighlighted(mask(r.highlightedAlleles, alleles));
+        if (!r.conflictReasons.isEmpty()) it.setConflicts(r.conflictReasons);
+        it.setHla(new String[]{d.getHlaA1(), d.getHlaA2(), d.getHlaB1(), d.getHlaB2()});
+        String[] hpa = new String[hpaLoci.size()];
+        for (int i = 0; i < hpa.length; i++) hpa[i] = d.getGenotype(hpaLoci.get(i));
+        it.setHpa(hpa);
+        it.setSelectionCount(r.selectionCount);
+        it.setTransfusedCount(r.transfusedCount);
+        it.setLastMatchDate(r.lastMatchDate);
+        return it;
+    }
+
+    private static int mask(Iterable<String> names, List<String> dictionary) {
+        int m = 0;
+        for (String name : names) {
+            int i = dictionary.indexOf(name);
+            if (i >= 0) m |= 1 << i;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.entity.DonorChange;
+import com.example.bloodsystem.repository.DonorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * 供者变更流水 (donor_changes)
+ * 写入：saveDonor / deleteDonor / 清空任务的各批次 / 导入批次在各自事务内追加记录。
+ * 追读：每个节点定时按 ID 顺序读取其他节点产生的变更，按数据库当前状态刷新本地索引；
+ * 索引版本随之递增，结果缓存等依赖索引版本的本地结构自动失效。
+ * 不依赖外部消息中间件。
+ */
+@Component
+public class DonorChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(DonorChangeFeed.class);
+
+    private static final int PAGE_SIZE = 1000;
+    // 单次追读最多处理的页数，其余留到下一轮
+    private static final int MAX_PAGES = 100;
+    private static final int MAX_GAP_SPAN = 5000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO donor_changes (donor_id, op, node_id, created_at) VALUES (?, ?, ?, ?)";
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private DonorRepository donorRepository;
+    @Autowired private DonorIndex donorIndex;
+
+    @Value("${feed.node-id:#{T(java.util.UUID).randomUUID().toString()}}")
+    private String nodeId;
+
+    // 自增 ID 的空洞：对应事务可能尚未提交，超过该时长仍未出现视为已回滚
+    @Value("${feed.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    @Value("${feed.retention-hours:24}")
+    private long retentionHours;
+
+    // 尚未出现的 ID -> 首次发现的时间
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    // 本节点标识 (后台导入任务的归属也使用)
+    public String nodeId() {
+        return nodeId;
+    }
+
+    // --- 写入 (需在供者变更所在的事务内调用) ---
+
+    public void recordUpserts(Collection<String> donorIds) {
+        record(DonorChange.UPSERT, donorIds);
+    }
+
+    public void recordDelete(String donorId) {
+        record(DonorChange.DELETE, List.of(donorId));
+    }
+
+    public void recordDeletes(Collection<String> donorIds) {
+        record(DonorChange.DELETE, donorIds);
+    }
+
+    private void record(String op, Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return;
+        Timestamp ts = now();
+        List<Object[]> args = new ArrayList<>(donorIds.size());
+        for (String id : donorIds) args.add(new Object[]{id, op, nodeId, ts});
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+    }
+
+    // --- 追读 ---
+
+    @Scheduled(fixedDelayString = "${feed.poll-interval-ms:1000}")
+    public synchronized void poll() {
+        if (!donorIndex.isLoaded()) return;
+        try {
+            if (lostHistory()) {
+                log.warn("变更流水已被压缩到当前位置之后，重新加载供者索引");
+                gaps.clear();
+                donorIndex.reload();
+                return;
+            }
+            recheckGaps();
+            for (int page = 0; page < MAX_PAGES; page++) {
+                if (readPage() < PAGE_SIZE) break;
+            }
+        } catch (Exception e) {
+            log.warn("追读供者变更流水失败: {}", e.getMessage());
+        }
+    }
+
+    // 返回本页读取的条数
+    private int readPage() {
+        long position = donorIndex.feedPosition();
+        List<DonorChange> changes = jdbcTemplate.query(
+                "SELECT id, donor_id, op, node_id FROM donor_changes WHERE id > ? ORDER BY id LIMIT " + PAGE_SIZE,
+                (rs, rowNum) -> {
+                    DonorChange c = new DonorChange();
+                    c.setId(rs.getLong(1));
+                    c.setDonorId(rs.getString(2));
+                    c.setOp(rs.getString(3));
+                    c.setNodeId(rs.getString(4));
+                    return c;
+                }, position);
+        if (changes.isEmpty()) return 0;
+
+        long now = System.currentTimeMillis();
+        long expected = position + 1;
+        for (DonorChange c : changes) {
+            // 跳过的 ID 可能属于仍未提交的事务，记下来之后再查
+            long span = c.getId() - expected;
+            if (span > MAX_GAP_SPAN) {
+                // 跨度过大无法逐个跟踪：不越过它继续追读，整体重新加载 (加载结果包含之前已提交的全部变更)
+                log.warn("变更流水 ID 在 {} 之后跳跃到 {}，重新加载供者索引", position, c.getId());
+                gaps.clear();
+                donorIndex.reload();
+                return 0;
+            }
+            for (long missing = expected; missing < c.getId(); missing++) gaps.putIfAbsent(missing, now);
+            expected = c.getId() + 1;
+        }
+        apply(changes);
+        donorIndex.setFeedPosition(changes.get(changes.size() - 1).getId());
+        return changes.size();
+    }
+
+    private void recheckGaps() {
+        if (gaps.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(firstSeen -> now - firstSeen > gapTimeoutMs);
+        if (gaps.isEmpty()) return;
+
+        String in = String.join(",", Collections.nCopies(gaps.size(), "?"));
+        List<DonorChange> late = jdbcTemplate.query(
+                "SELECT id, donor_id, op, node_id FROM donor_changes WHERE id IN (" + in + ") ORDER BY id",
+                (rs, rowNum) -> {
+                    DonorChange c = new DonorChange();
+                    c.setId(rs.getLong(1));
+                    c.setDonorId(rs.getString(2));
+                    c.setOp(rs.getString(3));
+                    c.setNodeId(rs.getString(4));
+                    return c;
+                }, gaps.keySet().toArray());
+        late.forEach(c -> gaps.remove(c.getId()));
+        apply(late);
+    }
+
+    /**
+     * 应用一批变更：按数据库当前状态刷新涉及的供者，因此与顺序无关，重复应用也无副作用
+     */
+    private void apply(List<DonorChange> changes) {
+        Set<String> touched = new LinkedHashSet<>();
+        for (DonorChange c : changes) {
+            if (nodeId.equals(c.getNodeId())) continue;
+            touched.add(c.getDonorId());
+        }
+        if (touched.isEmpty()) return;
+
+        Map<String, Donor> current = new HashMap<>();
+        donorRepository.findAllById(touched).forEach(d -> current.put(d.getDonorId(), d));
+        for (String id : touched) {
+            Donor d = current.get(id);
+            if (d != null) donorIndex.upsert(d);
+            else donorIndex.remove(id);
+        }
+    }
+
+    // 当前位置之后的记录已被压缩删除 (节点停机过久)
+    // 压缩总会保留 ID 最大的一条，因此最小 ID 跳过了当前位置的下一条就说明有记录丢失
+    private boolean lostHistory() {
+        Long min = jdbcTemplate.queryForObject("SELECT MIN(id) FROM donor_changes", Long.class);
+        return min != null && min > donorIndex.feedPosition() + 1;
+    }
+
+    // --- 压缩 ---
+
+    /**
+     * 删除超过保留时长的记录，但始终保留 ID 最大的一条作为高水位：
+     * 供者库长时间没有变更时流水也不会被删空，停机过久的节点仍能发现自己落后了
+     */
+    @Scheduled(fixedDelayString = "${feed.compact-interval-ms:3600000}", initialDelayString = "${feed.compact-interval-ms:3600000}")
+    public void compact() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM donor_changes", Long.class);
+        if (maxId == null) return;
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - retentionHours * 3600_000L);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM donor_changes WHERE created_at < ? AND id < ? LIMIT 10000",
+                    cutoff, maxId);
+            total += deleted;
+        } while (deleted > 0);
+        if (total > 0) log.info("压缩供者变更流水: 删除 {} 条", total);
+    }
+
+    private static Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,591 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HpaCodec;
+import com.example.bloodsystem.util.TransactionUtils;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 常驻内存的供者配型索引 (列式存储)
+ * 只保存配型需要的字段：HLA Group、HPA 编码、血型编码。
+ * 配型时只扫描内存，仅对最终返回的结果回表加载 Donor 实体。
+ * 另外为 HLA 四条链和血型维护倒排位图 (Group -> 供者序号集合)，用于抗体排除和候选剪枝。
+ */
+@Component
+public class DonorIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(DonorIndex.class);
+
+    public static final int NONE = -1;
+
+    // HLA 链位置 (倒排位图下标)
+    public static final int A1 = 0, A2 = 1, B1 = 2, B2 = 3;
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final String LOAD_SQL = "SELECT donor_id, blood_type, " +
+            "hla_a1_group, hla_a2_group, hla_b1_group, hla_b2_group, " +
+            "hpa_code, hpa1, hpa2, hpa3, hpa4, hpa5, hpa6, hpa10, hpa15, hpa21, name FROM donors";
+
+    @Autowired private DataSource dataSource;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 供者 ID -> 序号 (ordinal)，删除后的空位会被复用
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, Integer> bloodTypeCodes = new HashMap<>();
+    private final RoaringBitmap alive = new RoaringBitmap();
+    private final List<RoaringBitmap> bloodTypePostings = new ArrayList<>();
+    private final List<Map<Integer, RoaringBitmap>> hlaPostings = List.of(
+            new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private int size = 0;
+
+    private String[] donorIds;
+    private int[] bloodType;
+    private int[] hlaA1, hlaA2, hlaB1, hlaB2;
+    private byte[][] hpa; // [位点][序号]，位点顺序见 HpaCodec.LOCI
+    // 列表搜索用：供者 ID 与姓名的 n-gram 索引，序号与上面各列一致
+    private final NgramIndex keywords = new NgramIndex();
+
+    private volatile long version = 0;
+    private volatile boolean loaded = false;
+    // 已应用到的变更流水 ID (donor_changes)，加载时取加载前的最大 ID
+    private volatile long feedPosition = 0;
+
+    public DonorIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // --- 加载 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        ensureLoaded();
+    }
+
+    public void ensureLoaded() {
+        if (loaded) return;
+        lock.writeLock().lock();
+        try {
+            if (loaded) return;
+            long start = System.currentTimeMillis();
+            reset();
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            // MySQL 驱动需要 MIN_VALUE 才会逐行流式读取，避免整表进堆
+            jdbc.setFetchSize(Integer.MIN_VALUE);
+
+            String source = "快照";
+            if (!loadSnapshot(jdbc)) {
+                source = "数据库";
+                reset();
+                // 先记下流水位置再读数据：之后的变更会被追读 (重复应用无副作用)，不会遗漏
+                Long position = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM donor_changes", Long.class);
+                feedPosition = position != null ? position : 0;
+                jdbc.query(LOAD_SQL, this::loadRow);
+            }
+            alive.runOptimize();
+            bloodTypePostings.forEach(RoaringBitmap::runOptimize);
+            hlaPostings.forEach(m -> m.values().forEach(RoaringBitmap::runOptimize));
+            loaded = true;
+            version++;
+            log.info("供者配型索引加载完成 (来源: {}): {} 人, 耗时 {} ms", source, ordinals.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 全量加载与快照回放共用：已存在的供者原位更新
+    private void loadRow(ResultSet rs) throws SQLException {
+        String donorId = rs.getString("donor_id");
+        Integer existing = ordinals.get(donorId);
+        int ord;
+        if (existing != null) {
+            ord = existing;
+            removePostings(ord);
+        } else {
+            ord = allocateSlot(donorId);
+        }
+        bloodType[ord] = bloodTypeCode(rs.getString("blood_type"), true);
+        hlaA1[ord] = groupOf(rs, "hla_a1_group");
+        hlaA2[ord] = groupOf(rs, "hla_a2_group");
+        hlaB1[ord] = groupOf(rs, "hla_b1_group");
+        hlaB2[ord] = groupOf(rs, "hla_b2_group");
+        int packed = rs.getInt("hpa_code");
+        boolean hasPacked = !rs.wasNull();
+        for (int i = 0; i < HpaCodec.LOCI.size(); i++) {
+            // 尚未回填 hpa_code 的旧数据退回按字符串编码
+            hpa[i][ord] = hasPacked ? HpaCodec.unpack(packed, i) : HpaCodec.encode(rs.getString(8 + i));
+        }
+        addPostings(ord);
+        keywords.put(ord, donorId, rs.getString("name"));
+    }
+
+    // --- 快照 (加快重启) ---
+    // 格式: MAGIC, 格式版本, 流水位置, 写入时间, HPA 位点数, 血型字典, 供者数,
+    //      每个供者 [ID, 血型编码, HLA A1/A2/B1/B2 Group, HPA 打包编码], 末尾为 CRC32
+    // 快照只含配型用的编码，不含姓名等个人信息；列表搜索用的姓名在加载快照后从数据库读取
+
+    private static final int SNAPSHOT_MAGIC = 0x42534E50; // "BSNP"
+    private static final int SNAPSHOT_FORMAT = 3;
+    // 快照写入前已开始、之后才提交的事务：回放时按写入时间往前多取一段
+    private static final long REPLAY_MARGIN_MS = 5 * 60 * 1000;
+
+    // 为空表示不使用快照
+    @Value("${index.snapshot.path:}")
+    private String snapshotPath;
+
+    // 与变更流水的保留时长一致：更早的快照之后的流水可能已被压缩
+    @Value("${feed.retention-hours:24}")
+    private long feedRetentionHours;
+
+    private long snapshotVersion = -1;
+
+    /**
+     * 定期把索引写入快照文件 (索引无变化时跳过)
+     * 先写临时文件再原子替换，写入期间持有读锁，不阻塞配型
+     */
+    @Scheduled(fixedDelayString = "${index.snapshot.interval-ms:600000}",
+            initialDelayString = "${index.snapshot.interval-ms:600000}")
+    public void writeSnapshot() {
+        if (snapshotPath == null || snapshotPath.isEmpty() || !loaded || version == snapshotVersion) return;
+        Path target = Paths.get(snapshotPath);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            if (target.getParent() != null) Files.createDirectories(target.getParent());
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_FORMAT);
+                out.writeLong(feedPosition);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(HpaCodec.LOCI.size());
+
+                String[] bloodTypes = new String[bloodTypeCodes.size()];
+                bloodTypeCodes.forEach((k, code) -> bloodTypes[code] = k);
+                out.writeInt(bloodTypes.length);
+                for (String bt : bloodTypes) writeString(out, bt);
+
+                out.writeInt(alive.getCardinality());
+                for (IntIterator it = alive.getIntIterator(); it.hasNext(); ) {
+                    int ord = it.next();
+                    writeString(out, donorIds[ord]);
+                    out.writeInt(bloodType[ord]);
+                    out.writeInt(hlaA1[ord]);
+                    out.writeInt(hlaA2[ord]);
+                    out.writeInt(hlaB1[ord]);
+                    out.writeInt(hlaB2[ord]);
+                    int packed = 0;
+                    for (int i = 0; i < hpa.length; i++) packed |= hpa[i][ord] << (i * HpaCodec.BITS);
+                    out.writeInt(packed);
+                }
+                out.flush();
+                // CRC 不计入自身
+                out.writeLong(crc.getValue());
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotVersion = version;
+            log.info("供者索引快照已写入: {} 人, 耗时 {} ms", alive.getCardinality(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("写入供者索引快照失败: {}", e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从快照加载并回放快照之后的变更流水；快照不可用或无法回放时返回 false (改为全量加载)
+     * 需持有写锁
+     */
+    private boolean loadSnapshot(JdbcTemplate jdbc) {
+        if (snapshotPath == null || snapshotPath.isEmpty()) return false;
+        Path path = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(path)) return false;
+
+        long position, writtenAt;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < 40 || length > Integer.MAX_VALUE) return false;
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().limit((int) length - 8));
+            if (crc.getValue() != buf.getLong((int) length - 8)) {
+                log.warn("供者索引快照校验失败，改为全量加载");
+                return false;
+            }
+            if (buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != SNAPSHOT_FORMAT) return false;
+            position = buf.getLong();
+            writtenAt = buf.getLong();
+            if (buf.getInt() != HpaCodec.LOCI.size()) return false;
+
+            int[] codes = new int[buf.getInt()];
+            for (int i = 0; i < codes.length; i++) codes[i] = bloodTypeCode(readString(buf), true);
+
+            int count = buf.getInt();
+            if (count > donorIds.length) allocate(Integer.highestOneBit(count) << 1);
+            for (int n = 0; n < count; n++) {
+                int ord = allocateSlot(readString(buf));
+                int bt = buf.getInt();
+                bloodType[ord] = bt == NONE ? NONE : codes[bt];
+                hlaA1[ord] = buf.getInt();
+                hlaA2[ord] = buf.getInt();
+                hlaB1[ord] = buf.getInt();
+                hlaB2[ord] = buf.getInt();
+                int packed = buf.getInt();
+                for (int i = 0; i < hpa.length; i++) hpa[i][ord] = HpaCodec.unpack(packed, i);
+                addPostings(ord);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取供者索引快照失败，改为全量加载: {}", e.getMessage());
+            return false;
+        }
+        if (!replaySince(jdbc, position, writtenAt)) return false;
+        // 搜索文本 (ID + 姓名) 不写入快照，只读两列重建
+        jdbc.query("SELECT donor_id, name FROM donors", rs -> {
+            Integer ord = ordinals.get(rs.getString(1));
+            if (ord != null) keywords.put(ord, rs.getString(1), rs.getString(2));
+        });
+        return true;
+    }
+
+    // 回放快照之后的变更：按数据库当前状态刷新涉及的供者
+    private boolean replaySince(JdbcTemplate jdbc, long position, long writtenAt) {
+        // 压缩总会保留 ID 最大的一条：最小 ID 跳过了快照位置的下一条说明有记录丢失；
+        // 流水为空时无法确认，快照早于保留时长就不再信任
+        Long min = jdbc.queryForObject("SELECT MIN(id) FROM donor_changes", Long.class);
+        boolean lost = min != null
+                ? min > position + 1
+                : writtenAt < System.currentTimeMillis() - feedRetentionHours * 3600_000L;
+        if (lost) {
+            log.info("快照之后的变更流水已被压缩，改为全量加载");
+            return false;
+        }
+
+        Set<String> touched = new LinkedHashSet<>();
+        long[] maxId = {position};
+        jdbc.query("SELECT id, donor_id FROM donor_changes WHERE id > ? OR created_at >= ?", rs -> {
+            maxId[0] = Math.max(maxId[0], rs.getLong(1));
+            touched.add(rs.getString(2));
+        }, position, new Timestamp(writtenAt - REPLAY_MARGIN_MS));
+        // 变更量接近全库 (例如清空过供者库) 时全量加载更快
+        if (touched.size() > ordinals.size() / 2 + 1000) return false;
+
+        List<String> ids = new ArrayList<>(touched);
+        for (int from = 0; from < ids.size(); from += 1000) {
+            List<String> chunk = ids.subList(from, Math.min(from + 1000, ids.size()));
+            Set<String> found = new HashSet<>();
+            String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbc.query(LOAD_SQL + " WHERE donor_id IN (" + in + ")", rs -> {
+                found.add(rs.getString("donor_id"));
+                loadRow(rs);
+            }, chunk.toArray());
+            for (String id : chunk) {
+                if (!found.contains(id)) remove(id);
+            }
+        }
+        feedPosition = maxId[0];
+        log.info("已回放快照之后的变更: {} 个供者", ids.size());
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int groupOf(ResultSet rs, String column) throws SQLException {
+        int v = rs.getInt(column);
+        return rs.wasNull() ? NONE : v;
+    }
+
+    /**
+     * 丢弃内存数据并从数据库重新加载 (其他节点清空了供者库，或变更流水已被压缩无法追读时)
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            loaded = false;
+            ensureLoaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLoaded() { return loaded; }
+
+    public long feedPosition() { return feedPosition; }
+
+    public void setFeedPosition(long position) { this.feedPosition = position; }
+
+    // --- 写入 (由 saveDonor / deleteDonor / 导入等调用) ---
+
+    public void upsert(Donor d) {
+        if (d == null || d.getDonorId() == null) return;
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinals.get(d.getDonorId());
+            int ord;
+            if (existing != null) {
+                ord = existing;
+                removePostings(ord);
+            } else {
+                ord = allocateSlot(d.getDonorId());
+            }
+            bloodType[ord] = bloodTypeCode(d.getBloodType(), true);
+            hlaA1[ord] = groupOf(d.getHlaA1Group());
+            hlaA2[ord] = groupOf(d.getHlaA2Group());
+            hlaB1[ord] = groupOf(d.getHlaB1Group());
+            hlaB2[ord] = groupOf(d.getHlaB2Group());
+            Integer packed = d.getHpaCode();
+            for (int i = 0; i < HpaCodec.LOCI.size(); i++) {
+                hpa[i][ord] = packed != null
+                        ? HpaCodec.unpack(packed, i)
+                        : HpaCodec.encode(d.getGenotype(HpaCodec.LOCI.get(i)));
+            }
+            addPostings(ord);
+            keywords.put(ord, d.getDonorId(), d.getName());
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String donorId) {
+        lock.writeLock().lock();
+        try {
+            Integer ord = ordinals.remove(donorId);
+            if (ord == null) return;
+            removePostings(ord);
+            keywords.remove(ord);
+            alive.remove(ord);
+            donorIds[ord] = null;
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            freeSlots[freeCount++] = ord;
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 事务提交后再更新索引，回滚时索引保持不变
+    public void upsertAfterCommit(Collection<Donor> donors) {
+        List<Donor> copy = List.copyOf(donors);
+        TransactionUtils.afterCommit(() -> copy.forEach(this::upsert));
+    }
+
+    public void removeAfterCommit(String donorId) {
+        TransactionUtils.afterCommit(() -> remove(donorId));
+    }
+
+    public void removeAfterCommit(Collection<String> donorIds) {
+        List<String> copy = List.copyOf(donorIds);
+        TransactionUtils.afterCommit(() -> copy.forEach(this::remove));
+    }
+
+    // --- 读取 (调用方需在 read() 内访问) ---
+
+    public <T> T read(Supplier<T> action) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 序号上界 (含已删除的空位) */
+    public int size() { return size; }
+    public int count() { return ordinals.size(); }
+    public long version() { return version; }
+
+    public boolean isAlive(int ord) { return alive.contains(ord); }
+    public String donorId(int ord) { return donorIds[ord]; }
+    public int bloodType(int ord) { return bloodType[ord]; }
+    public int hlaA1(int ord) { return hlaA1[ord]; }
+    public int hlaA2(int ord) { return hlaA2[ord]; }
+    public int hlaB1(int ord) { return hlaB1[ord]; }
+    public int hlaB2(int ord) { return hlaB2[ord]; }
+    public byte hpa(int locus, int ord) { return hpa[locus][ord]; }
+
+    // 返回的位图为索引内部对象，只读，调用方需用 RoaringBitmap.and/or 等生成新位图
+
+    /** 全部在库供者 */
+    public RoaringBitmap all() { return alive; }
+
+    /** 指定血型的供者；code 为 NONE 时返回全部 */
+    public RoaringBitmap withBloodType(int code) {
+        if (code == NONE) return alive;
+        return code < bloodTypePostings.size() ? bloodTypePostings.get(code) : EMPTY;
+    }
+
+    /** 某条链 (A1/A2/B1/B2) 上携带指定 Group 的供者 */
+    public RoaringBitmap carrying(int chain, int group) {
+        if (group == NONE) return EMPTY;
+        return hlaPostings.get(chain).getOrDefault(group, EMPTY);
+    }
+
+    /** 任意一条链携带任一指定 Group 的供者 (抗体冲突集合) */
+    public RoaringBitmap carryingAny(int[] groups) {
+        List<RoaringBitmap> hits = new ArrayList<>();
+        for (int g : groups) {
+            for (Map<Integer, RoaringBitmap> postings : hlaPostings) {
+                RoaringBitmap bm = postings.get(g);
+                if (bm != null) hits.add(bm);
+            }
+        }
+        return hits.isEmpty() ? new RoaringBitmap() : RoaringBitmap.or(hits.iterator());
+    }
+
+    /**
+     * ID 或姓名包含 keyword 的供者 (不区分大小写，与 LIKE '%keyword%' 一致)，返回新位图
+     */
+    public RoaringBitmap search(String keyword) {
+        return keywords.search(keyword);
+    }
+
+    /**
+     * 查询血型编码；库中不存在该血型时返回 NONE
+     */
+    public int findBloodType(String value) {
+        return bloodTypeCode(value, false);
+    }
+
+    // --- 内部 ---
+
+    // 与 MySQL 默认排序规则一致：忽略大小写与首尾空白
+    private int bloodTypeCode(String value, boolean create) {
+        if (value == null) return NONE;
+        String key = value.trim().toUpperCase(Locale.ROOT);
+        Integer code = bloodTypeCodes.get(key);
+        if (code == null) {
+            if (!create) return NONE;
+            code = bloodTypeCodes.size();
+            bloodTypeCodes.put(key, code);
+        }
+        return code;
+    }
+
+    private void addPostings(int ord) {
+        if (bloodType[ord] != NONE) {
+            while (bloodTypePostings.size() <= bloodType[ord]) bloodTypePostings.add(new RoaringBitmap());
+            bloodTypePostings.get(bloodType[ord]).add(ord);
+        }
+        addPosting(A1, hlaA1[ord], ord);
+        addPosting(A2, hlaA2[ord], ord);
+        addPosting(B1, hlaB1[ord], ord);
+        addPosting(B2, hlaB2[ord], ord);
+    }
+
+    private void removePostings(int ord) {
+        if (bloodType[ord] != NONE) bloodTypePostings.get(bloodType[ord]).remove(ord);
+        removePosting(A1, hlaA1[ord], ord);
+        removePosting(A2, hlaA2[ord], ord);
+        removePosting(B1, hlaB1[ord], ord);
+        removePosting(B2, hlaB2[ord], ord);
+    }
+
+    private void addPosting(int chain, int group, int ord) {
+        if (group == NONE) return;
+        hlaPostings.get(chain).computeIfAbsent(group, g -> new RoaringBitmap()).add(ord);
+    }
+
+    private void removePosting(int chain, int group, int ord) {
+        if (group == NONE) return;
+        RoaringBitmap bm = hlaPostings.get(chain).get(group);
+        if (bm == null) return;
+        bm.remove(ord);
+        if (bm.isEmpty()) hlaPostings.get(chain).remove(group);
+    }
+
+    private static int groupOf(Integer g) {
+        return g == null ? NONE : g;
+    }
+
+    private int allocateSlot(String donorId) {
+        int ord;
+        if (freeCount > 0) {
+            ord = freeSlots[--freeCount];
+        } else {
+            if (size == donorIds.length) grow(size * 2);
+            ord = size++;
+        }
+        donorIds[ord] = donorId;
+        ordinals.put(donorId, ord);
+        alive.add(ord);
+        return ord;
+    }
+
+    private void reset() {
+        ordinals.clear();
+        keywords.clear();
+        bloodTypeCodes.clear();
+        alive.clear();
+        bloodTypePostings.clear();
+        hlaPostings.forEach(Map::clear);
+        freeCount = 0;
+        size = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        donorIds = new String[capacity];
+        bloodType = new int[capacity];
+        hlaA1 = new int[capacity];
+        hlaA2 = new int[capacity];
+        hlaB1 = new int[capacity];
+        hlaB2 = new int[capacity];
+        hpa = new byte[HpaCodec.LOCI.size()][capacity];
+    }
+
+    private void grow(int capacity) {
+        donorIds = Arrays.copyOf(donorIds, capacity);
+        bloodType = Arrays.copyOf(bloodType, capacity);
+        hlaA1 = Arrays.copyOf(hlaA1, capacity);
+        hlaA2 = Arrays.copyOf(hlaA2, capacity);
+        hlaB1 = Arrays.copyOf(hlaB1, capacity);
+        hlaB2 = Arrays.copyOf(hlaB2, capacity);
+        for (int i = 0; i < hpa.length; i++) hpa[i] = Arrays.copyOf(hpa[i], capacity);
+    }
+}
@@ -1,20 +1,35 @@
 package com.example.bloodsystem.service;
 
 import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.ScoringKernel;
 import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.entity.DonorUsage;
+import com.example.bloodsystem.entity.Patient;
 import com.example.bloodsystem.repository.DonorRepository;
 import com.example.bloodsystem.repository.MatchRecordRepository; // 新增引用
+import com.example.bloodsystem.repository.PatientRepository;
 import com.example.bloodsystem.util.HlaUtils;
 import com.example.bloodsystem.util.HlaUtils.HlaInfo;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
+import com.example.bloodsystem.util.HpaCodec;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.micrometer.core.annotation.Timed;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class DonorService {
@@ -23,42 +38,76 @@ public class DonorService {
     @Autowired private MatchRecordRepository matchRecordRepository; // 注入历史记录 Repo
     @Autowired private ImportService importService;
     @Autowired private MatchConfig matchConfig;
-    @PersistenceContext private EntityManager entityManager;
+    @Autowired private DonorIndex donorIndex;
+    @Autowired private DonorChangeFeed changeFeed;
+    @Autowired private MatchScoringPool scoringPool;
+    @Autowired private MatchSnapshotStore snapshotStore;
+    @Autowired private MatchResultCache resultCache;
+    @Autowired private MatchMetrics metrics;
+    @Autowired private PatientRepository patientRepository;
+    @Autowired private DonorUsageStats donorUsage;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    // 本进程的启动标识：ETag 中的各版本号只在本节点、本次启动内有意义，
+    // 加上它之后其他节点或重启前发出的 ETag 不会与当前版本号偶然相同而误返回 304
+    private final String bootId = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
 
     // --- CRUD ---
     @Transactional
     public void deleteDonor(String id) {
         try {
-            // 🔥 修复：先删除该供者相关的历史记录，否则外键报错
-            // 注意：这里需要 MatchRecordRepository 支持按供者删除，或者用更简单的逻辑
-            // 为简单起见，这里假设已经在数据库层级做了级联，或者手动执行删除
-            // 如果没有级联配置，需要先执行 delete from match_records where donor_id = ?
-            // 这里我们采用简单方式：如果报错说明有依赖，提示用户。
-            // 但用户要求"清空库"成功，所以下面 deleteAllDonors 必须处理。
-
+            // 先删除引用该供者的配型记录，否则外键报错
+            matchRecordRepository.deleteByDonorId(id);
+            donorUsage.remove(List.of(id));
             repository.deleteById(id);
             repository.flush();
+            changeFeed.recordDelete(id);
+            donorIndex.removeAfterCommit(id);
         } catch (Exception e) {
-            throw new RuntimeException("删除失败: 该供者可能存在关联的配型记录，无法直接删除");
+            throw new RuntimeException("删除失败: " + e.getMessage());
         }
     }
 
-    @Transactional
-    public void deleteAllDonors() {
-        try {
-            // 🔥 修复：清空供者库前，必须先清空引用它的配型记录表
-            matchRecordRepository.deleteAllInBatch();
-            repository.deleteAllInBatch();
-            repository.flush();
-        } catch (Exception e) {
-            throw new RuntimeException("清空失败: " + e.getMessage());
+    public static final int MAX_LIST_SIZE = 200;
+
+    /**
+     * 供者列表 (键集分页，按 ID 倒序)；cursor 为空取第一页，游标格式错误时抛出 IllegalArgumentException
+     * 有搜索词时走内存中的 n-gram 索引，不再对整表做 LIKE 扫描
+     * withTotal 时附带总数 (内存索引人数或命中数)
+     */
+    public KeysetPage<Donor> getDonors(String cursor, int size, String keyword, boolean withTotal) {
+        KeysetCursor c = KeysetCursor.parse(cursor);
+        String kw = keyword != null && !keyword.trim().isEmpty() ? keyword.trim() : null;
+        int n = Math.max(1, Math.min(size, MAX_LIST_SIZE));
+        boolean backward = c != null && c.backward;
+
+        List<Donor> rows;
+        long[] total = {0};
+        if (kw != null) {
+            List<String> ids = donorIndex.read(() -> {
+                RoaringBitmap hits = donorIndex.search(kw);
+                total[0] = hits.getLongCardinality();
+                return KeysetPage.seek(hits.getIntIterator(), donorIndex::donorId, Comparator.<String>reverseOrder(),
+                        c != null ? c.key : null, backward, n + 1);
+            });
+            Map<String, Donor> donors = loadDonors(ids);
+            rows = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                Donor d = donors.get(id);
+                if (d != null) rows.add(d);
+            }
+        } else {
+            Pageable limit = PageRequest.of(0, n + 1);
+            rows = backward ? repository.findPageBefore(c.key, limit)
+                    : repository.findPageAfter(c != null ? c.key : null, limit);
+            total[0] = donorIndex.read(donorIndex::count);
         }
-    }
+        // 前面已不足一页：直接回到第一页，避免出现残缺的首页
+        if (backward && rows.size() <= n) return getDonors(null, n, kw, withTotal);
 
-    public Page<Donor> getDonors(int page, int size, String keyword) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("donorId").descending());
-        if (keyword != null && !keyword.trim().isEmpty()) return repository.search(keyword.trim(), pageable);
-        return repository.findAll(pageable);
+        KeysetPage<Donor> page = KeysetPage.of(rows, n, c, Donor::getDonorId);
+        if (withTotal) page.setTotal(total[0]);
+        return page;
     }
     public Donor getDonorById(String id) { return repository.findById(id).orElse(null); }
 
@@ -67,137 +116,524 @@ public class DonorService {
         if (donor.getDonorId() == null || donor.getDonorId().isEmpty()) donor.setDonorId(UUID.randomUUID().toString().replace("-", "").substring(0, 10));
         HlaUtils.fillSplitFields(donor);
         repository.save(donor);
+        changeFeed.recordUpserts(List.of(donor.getDonorId()));
+        donorIndex.upsertAfterCommit(List.of(donor));
     }
     public ImportResult importFromText(String textData) { return importService.parseAndImportText(textData); }
 
     // --- 新版配型逻辑 ---
 
-    @SuppressWarnings("unchecked")
+    private static final int RESULT_LIMIT = 50;
+    // 流式输出时每次生成明细并回表加载的条数
+    private static final int STREAM_CHUNK = 200;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Value("${match.batch.max-patients:1000}")
+    private int maxBatchPatients;
+
+    @Timed(value = "match.requests", extraTags = {"type", "single"}, histogram = true)
     public List<MatchResult> matchDonors(String patientBloodType,
                                          Map<String, String> pGts,
                                          String antibodyText,
                                          boolean limitResult) {
 
-        Set<String> selectedHpas = new HashSet<>();
-        List<String> validHpas = matchConfig.getAllHpas();
+        MatchQuery query = MatchQuery.parse(patientBloodType, pGts, antibodyText, limitResult, matchConfig);
 
-        if (pGts != null) {
-            pGts.forEach((k, v) -> {
-                if (v != null && !v.isEmpty() && validHpas.contains(k)) selectedHpas.add(k);
-            });
+        // 🔥 只扫描内存索引；打分阶段只保留 (序号, 分数)，明细只为返回的结果生成
+        List<MatchResult> results = donorIndex.read(() -> {
+            Ranking ranking = ranking(query);
+            return materialize(ranking, 0, ranking.size(), query);
+        });
+        return hydrate(results);
+    }
+
+    public interface MatchSink {
+        void accept(MatchResult result) throws IOException;
+    }
+
+    /**
+     * 流式配型：按名次从高到低逐条输出
+     * 排名只保留原始类型数组，明细与 Donor 实体每次只生成/加载一段，服务端内存占用有上限
+     * 每段在各自的只读事务中加载，事务结束即释放该段的持久化上下文
+     * 耗时包含向客户端写出的时间
+     */
+    @Timed(value = "match.requests", extraTags = {"type", "stream"}, histogram = true)
+    public void streamMatches(String patientBloodType, Map<String, String> pGts, String antibodyText,
+                              boolean limitResult, MatchSink sink) throws IOException {
+        MatchQuery query = MatchQuery.parse(patientBloodType, pGts, antibodyText, limitResult, matchConfig);
+        Ranking ranking = donorIndex.read(() -> ranking(query));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        for (int from = 0; from < ranking.size(); from += STREAM_CHUNK) {
+            int start = from;
+            int end = Math.min(from + STREAM_CHUNK, ranking.size());
+            List<MatchResult> chunk = donorIndex.read(() -> materialize(ranking, start, end, query));
+            for (MatchResult r : readOnly.execute(status -> hydrate(chunk))) sink.accept(r);
         }
+    }
 
-        HlaInfo tA1 = HlaUtils.parseHla(pGts.get("HLA-A1"));
-        HlaInfo tA2 = HlaUtils.parseHla(pGts.get("HLA-A2"));
-        HlaInfo tB1 = HlaUtils.parseHla(pGts.get("HLA-B1"));
-        HlaInfo tB2 = HlaUtils.parseHla(pGts.get("HLA-B2"));
+    // --- 精简格式与条件请求 ---
 
-        List<Integer> bannedGroups = HlaUtils.parseAntibodies(antibodyText);
+    public CompactMatchResults compact(List<MatchResult> results) {
+        return CompactMatchResults.of(results, matchConfig.getAllHpas());
+    }
 
-        StringBuilder sql = new StringBuilder("SELECT * FROM donors WHERE 1=1 ");
-        Map<String, Object> params = new HashMap<>();
+    public CompactMatchResults compact(MatchPage page) {
+        CompactMatchResults c = CompactMatchResults.of(page.getResults(), matchConfig.getAllHpas());
+        c.setNextCursor(page.getNextCursor());
+        c.setOffset(page.getOffset());
+        c.setTotal(page.getTotal());
+        if (page.isTruncated()) c.setTruncated(true);
+        return c;
+    }
+
+    public CompactMatchResults compactDictionary() {
+        return CompactMatchResults.dictionary(matchConfig.getAllHpas());
+    }
 
-        if (patientBloodType != null && !patientBloodType.isEmpty()) {
-            sql.append(" AND blood_type = :bloodType ");
-            params.put("bloodType", patientBloodType);
+    /**
+     * 配型列表结果的 ETag (弱校验，响应会被压缩)
+     * 由启动标识、供者索引版本、打分内核代数、使用统计版本与归一化后的条件 (加上影响输出的选项 variant) 组成；
+     * 在配型之前取版本号，期间数据变化只会让之后的条件请求不命中，不会误返回 304。
+     * 版本号是节点本地的计数，多实例部署时请求落到其他节点只会不命中 (重新返回完整结果)。
+     */
+    public String matchEtag(String patientBloodType, Map<String, String> pGts, String antibodyText,
+                            boolean limitResult, String variant) {
+        MatchQuery query = MatchQuery.parse(patientBloodType, pGts, antibodyText, limitResult, matchConfig);
+        String versions = bootId + "-" + Long.toHexString(donorIndex.version()) + "-" + Long.toHexString(query.kernel.generation())
+                + "-" + Long.toHexString(donorUsage.version());
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256")
+                    .digest((query.key() + "|" + variant).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
+        return "W/\"" + versions + "-" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+    }
 
-        Query nativeQuery = entityManager.createNativeQuery(sql.toString(), Donor.class);
-        params.forEach(nativeQuery::setParameter);
+    // --- 分页 (快照 + 游标) ---
+
+    /**
+     * 第一页：完成排名并保存快照，后续页直接从快照取，不再重新扫描排序
+     * 排名超过快照容量上限时不保存快照，只返回第一页，nextCursor 为 null 并标记 truncated (需缩小检索条件)
+     */
+    @Timed(value = "match.requests", extraTags = {"type", "page"}, histogram = true)
+    public MatchPage matchFirstPage(String patientBloodType, Map<String, String> pGts, String antibodyText,
+                                    boolean limitResult, int pageSize) {
+        MatchQuery query = MatchQuery.parse(patientBloodType, pGts, antibodyText, limitResult, matchConfig);
+        Ranking ranking = donorIndex.read(() -> ranking(query));
+        MatchSnapshotStore.Snapshot snapshot = snapshotStore.put(ranking, query);
+        if (snapshot != null) return page(snapshot, 0, pageSize);
+
+        int end = Math.min(Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE)), ranking.size());
+        List<MatchResult> results = donorIndex.read(() -> materialize(ranking, 0, end, query));
+        MatchPage page = new MatchPage();
+        page.setResults(hydrate(results));
+        page.setTotal(ranking.size());
+        page.setTruncated(end < ranking.size());
+        return page;
+    }
 
-        List<Donor> candidates = nativeQuery.getResultList();
-        List<MatchResult> results = new ArrayList<>();
+    /**
+     * 按游标取下一页；快照已过期或被淘汰时返回 null，游标格式错误时抛出 IllegalArgumentException
+     */
+    @Timed(value = "match.requests", extraTags = {"type", "page"}, histogram = true)
+    public MatchPage matchNextPage(String cursor, int pageSize) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        int sep = decoded.lastIndexOf(':');
+        if (sep <= 0) throw new IllegalArgumentException("无效的游标");
 
-        for (Donor d : candidates) {
-            MatchResult mr = calculateScore(d, pGts, selectedHpas,
-                    tA1, tA2, tB1, tB2,
-                    bannedGroups);
-            if (mr != null) {
-                results.add(mr);
-            }
+        int offset;
+        try {
+            offset = Integer.parseInt(decoded.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+
+        MatchSnapshotStore.Snapshot snapshot = snapshotStore.get(decoded.substring(0, sep));
+        if (snapshot == null) return null;
+        if (offset < 0 || offset > snapshot.ranking.size()) throw new IllegalArgumentException("无效的游标");
+        return page(snapshot, offset, pageSize);
+    }
+
+    private MatchPage page(MatchSnapshotStore.Snapshot snapshot, int offset, int pageSize) {
+        int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        int end = Math.min(offset + size, snapshot.ranking.size());
+        List<MatchResult> results = donorIndex.read(() -> materialize(snapshot.ranking, offset, end, snapshot.query));
+
+        MatchPage page = new MatchPage();
+        page.setResults(hydrate(results));
+        page.setOffset(offset);
+        page.setTotal(snapshot.ranking.size());
+        if (end < snapshot.ranking.size()) {
+            String raw = snapshot.id + ":" + end;
+            page.setNextCursor(Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8)));
+        }
+        return page;
+    }
+
+    // --- 批量配型 ---
+
+    /**
+     * 批量配型：只遍历一次供者，每个供者依次对所有患者打分，各患者维护自己的 Top-K
+     * 结果与逐个调用 matchDonors 完全一致 (排名规则是全序)
+     * 患者数超限或患者不存在时抛出 IllegalArgumentException
+     */
+    @Timed(value = "match.requests", extraTags = {"type", "batch"}, histogram = true)
+    public List<BatchMatchResult> matchBatch(BatchMatchRequest request) {
+        List<String> labels = new ArrayList<>();
+        List<MatchQuery> queries = new ArrayList<>();
+
+        List<String> patientIds = request.getPatientIds() != null ? request.getPatientIds() : List.of();
+        List<BatchMatchRequest.Profile> profiles = request.getPatients() != null ? request.getPatients() : List.of();
+        if (patientIds.size() + profiles.size() > maxBatchPatients) {
+            throw new IllegalArgumentException("单次批量配型最多 " + maxBatchPatients + " 名患者");
         }
 
-        results.sort((r1, r2) -> Double.compare(r2.score, r1.score));
+        if (!patientIds.isEmpty()) {
+            Map<String, Patient> patients = new HashMap<>();
+            patientRepository.findAllById(patientIds).forEach(p -> patients.put(p.getPatientId(), p));
+            for (String id : patientIds) {
+                Patient p = patients.get(id);
+                if (p == null) throw new IllegalArgumentException("患者不存在: " + id);
+                labels.add(id);
+                queries.add(MatchQuery.parse(p.getBloodType(), patientGenotypes(p), p.getAntibodies(),
+                        request.isLimitResult(), matchConfig));
+            }
+        }
+        for (BatchMatchRequest.Profile p : profiles) {
+            labels.add(p.getPatientId());
+            queries.add(MatchQuery.parse(p.getBloodType(), p.getGenotypes(), p.getAntibodies(),
+                    request.isLimitResult(), matchConfig));
+        }
 
-        if (limitResult && results.size() > 50) {
-            return results.subList(0, 50);
+        MatchQuery[] qs = queries.toArray(new MatchQuery[0]);
+        List<List<MatchResult>> perPatient = donorIndex.read(() -> {
+            TopK[] tops = rankBatch(qs);
+            List<List<MatchResult>> out = new ArrayList<>(qs.length);
+            for (int i = 0; i < qs.length; i++) {
+                Ranking ranking = Ranking.of(tops[i], donorIndex);
+                out.add(materialize(ranking, 0, ranking.size(), qs[i]));
+            }
+            return out;
+        });
+
+        // 所有患者的结果一次性回表
+        Set<String> ids = new HashSet<>();
+        perPatient.forEach(list -> list.forEach(r -> ids.add(r.donorId)));
+        Map<String, Donor> donors = loadDonors(ids);
+
+        List<BatchMatchResult> results = new ArrayList<>(qs.length);
+        for (int i = 0; i < qs.length; i++) {
+            BatchMatchResult br = new BatchMatchResult();
+            br.setPatientId(labels.get(i));
+            br.setResults(attach(perPatient.get(i), donors));
+            results.add(br);
         }
         return results;
     }
 
-    private MatchResult calculateScore(Donor d, Map<String, String> pGts, Set<String> selectedHpaLoci,
-                                       HlaInfo tA1, HlaInfo tA2, HlaInfo tB1, HlaInfo tB2,
-                                       List<Integer> bannedGroups) {
+    // 与页面提交的参数键一致 (HLA 去除首尾空格)
+    private Map<String, String> patientGenotypes(Patient p) {
+        Map<String, String> gts = new HashMap<>(p.getGenotypesMap());
+        if (p.getHlaA1() != null && !p.getHlaA1().trim().isEmpty()) gts.put("HLA-A1", p.getHlaA1().trim());
+        if (p.getHlaA2() != null && !p.getHlaA2().trim().isEmpty()) gts.put("HLA-A2", p.getHlaA2().trim());
+        if (p.getHlaB1() != null && !p.getHlaB1().trim().isEmpty()) gts.put("HLA-B1", p.getHlaB1().trim());
+        if (p.getHlaB2() != null && !p.getHlaB2().trim().isEmpty()) gts.put("HLA-B2", p.getHlaB2().trim());
+        return gts;
+    }
+
+    /**
+     * 批量排名：候选为各患者候选集合的并集，每个供者只读取一次索引列
+     * 需在 donorIndex.read() 内调用
+     */
+    private TopK[] rankBatch(MatchQuery[] qs) {
+        int n = qs.length;
+        int[] bloodCodes = new int[n];
+        boolean[] active = new boolean[n];
+        RoaringBitmap candidates = new RoaringBitmap();
+        for (int i = 0; i < n; i++) {
+            bloodCodes[i] = DonorIndex.NONE;
+            if (qs[i].bloodType != null) {
+                bloodCodes[i] = donorIndex.findBloodType(qs[i].bloodType);
+                // 库中没有该血型：结果为空，与单次配型一致
+                if (bloodCodes[i] == DonorIndex.NONE) continue;
+            }
+            active[i] = true;
+            candidates.or(donorIndex.withBloodType(bloodCodes[i]));
+        }
+
+        Supplier<TopK[]> factory = () -> {
+            TopK[] tops = new TopK[n];
+            for (int i = 0; i < n; i++) tops[i] = new TopK(qs[i].limitResult ? RESULT_LIMIT : 0, this::compareDonorIds);
+            return tops;
+        };
+        MatchScoringPool.BatchScorer scorer = (ord, tops) -> {
+            int bt = donorIndex.bloodType(ord);
+            for (int i = 0; i < n; i++) {
+                if (!active[i] || (bloodCodes[i] != DonorIndex.NONE && bloodCodes[i] != bt)) continue;
+                tops[i].offer(ord, score(ord, qs[i], null));
+            }
+        };
+
+        if (scoringPool.shouldParallelize(candidates)) {
+            return scoringPool.scoreBatch(candidates, factory, scorer);
+        }
+        TopK[] tops = factory.get();
+        for (IntIterator it = candidates.getIntIterator(); it.hasNext(); ) {
+            scorer.score(it.next(), tops);
+        }
+        return tops;
+    }
+
+    /**
+     * 先查缓存，未命中再排名；需在 donorIndex.read() 内调用 (读锁内索引版本不会变化)
+     */
+    private Ranking ranking(MatchQuery q) {
+        long version = donorIndex.version();
+        Ranking ranking = resultCache.get(q, version);
+        metrics.ranked(q, ranking != null);
+        if (ranking == null) {
+            ranking = Ranking.of(rank(q), donorIndex);
+            resultCache.put(q, version, ranking);
+        }
+        return ranking;
+    }
 
-        MatchResult mr = new MatchResult(d);
-        double totalScore = 0.0;
+    /**
+     * 排名：得到按 "分数降序、供者 ID 升序" 排好的 (序号, 分数)
+     * 需在 donorIndex.read() 内调用
+     */
+    private TopK rank(MatchQuery q) {
+        int limit = q.limitResult ? RESULT_LIMIT : 0;
+        TopK top = new TopK(limit, this::compareDonorIds);
+
+        long start = System.nanoTime();
+        int bloodCode = DonorIndex.NONE;
+        if (q.bloodType != null) {
+            bloodCode = donorIndex.findBloodType(q.bloodType);
+            if (bloodCode == DonorIndex.NONE) {
+                metrics.candidates(System.nanoTime() - start, donorIndex.count(), 0, 0);
+                return top.finish();
+            }
+        }
 
-        checkConflict(d.getHlaA1Group(), "HLA-A1", bannedGroups, mr);
-        checkConflict(d.getHlaA2Group(), "HLA-A2", bannedGroups, mr);
-        checkConflict(d.getHlaB1Group(), "HLA-B1", bannedGroups, mr);
-        checkConflict(d.getHlaB2Group(), "HLA-B2", bannedGroups, mr);
+        // 倒排位图求冲突集合：携带任一排斥抗原的供者
+        RoaringBitmap candidates = donorIndex.withBloodType(bloodCode);
+        RoaringBitmap conflicted = RoaringBitmap.and(candidates, donorIndex.carryingAny(q.bannedGroups));
+        RoaringBitmap survivors = RoaringBitmap.andNot(candidates, conflicted);
+        List<RoaringBitmap> buckets = scoreBuckets(survivors, conflicted, q);
+        long scored = System.nanoTime();
+        metrics.candidates(scored - start, donorIndex.count(), candidates.getCardinality(), survivors.getCardinality());
+
+        for (RoaringBitmap bucket : buckets) {
+            if (scoringPool.shouldParallelize(bucket)) {
+                // 候选较多时切块并行打分，各块 Top-K 合并后与串行结果一致
+                top.merge(scoringPool.score(bucket, limit, this::compareDonorIds, ord -> score(ord, q, null)));
+            } else {
+                for (IntIterator it = bucket.getIntIterator(); it.hasNext(); ) {
+                    int ord = it.next();
+                    top.offer(ord, score(ord, q, null));
+                }
+            }
+            if (q.limitResult && top.offered() >= RESULT_LIMIT) break;
+        }
+        long sorted = System.nanoTime();
+        metrics.scoring(sorted - scored, top.offered());
+        top.finish();
+        metrics.sort(System.nanoTime() - sorted);
+        return top;
+    }
 
-        int matchCount = 0;
-        int matchesA = countBestMatches(tA1, tA2, d.getHlaA1Group(), d.getHlaA2Group(), mr, "HLA-A");
-        int matchesB = countBestMatches(tB1, tB2, d.getHlaB1Group(), d.getHlaB2Group(), mr, "HLA-B");
+    // 同分时按供者 ID 升序 (与原先数据库主键顺序一致)
+    private int compareDonorIds(int a, int b) {
+        return donorIndex.donorId(a).compareTo(donorIndex.donorId(b));
+    }
 
-        matchCount = matchesA + matchesB;
-        totalScore += (matchCount * 100.0);
+    /**
+     * 为名次 [from, to) 生成结果明细，需在 donorIndex.read() 内调用
+     * 排名之后被删除 (序号已空出或被复用) 的供者直接跳过；
+     * 分数取排名时的分数，排名之后被修改的供者也不会打乱流式输出与翻页的名次顺序
+     */
+    private List<MatchResult> materialize(Ranking ranking, int from, int to, MatchQuery q) {
+        long start = System.nanoTime();
+        List<MatchResult> results = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int ord = ranking.ordinals[i];
+            String donorId = ranking.donorIds[i];
+            if (!donorIndex.isAlive(ord) || !donorId.equals(donorIndex.donorId(ord))) continue;
+            MatchResult mr = new MatchResult(donorId);
+            score(ord, q, mr);
+            mr.score = ranking.scores[i];
+            results.add(mr);
+        }
+        metrics.materialize(System.nanoTime() - start);
+        return results;
+    }
 
-        if (matchCount == 4) mr.grade = "A";
-        else if (matchCount == 3) mr.grade = "B";
-        else if (matchCount == 1 || matchCount == 2) mr.grade = "C";
-        else mr.grade = "D";
+    /**
+     * 按分数区间从高到低划分候选集合
+     * 默认参数下 HLA 每匹配一条 +100，HPA 最多 +45，冲突每条 -1000，
+     * 因此 "HLA 匹配 4/3/2/1/0 条的无冲突供者" 与 "冲突供者" 各档分数互不重叠。
+     * 限制条数时只需依次打分，凑够条数即可停止，低档供者无需打分。
+     */
+    private List<RoaringBitmap> scoreBuckets(RoaringBitmap survivors, RoaringBitmap conflicted, MatchQuery q) {
+        if (!q.limitResult) return List.of(survivors, conflicted);
+        // 打分参数被调整到各档分数可能重叠时，不做剪枝
+        if (!q.kernel.bandsDisjoint()) return List.of(RoaringBitmap.or(survivors, conflicted));
+
+        RoaringBitmap[] a = locusMatches(q.a1, q.a2, DonorIndex.A1, DonorIndex.A2);
+        RoaringBitmap[] b = locusMatches(q.b1, q.b2, DonorIndex.B1, DonorIndex.B2);
+
+        // atLeast[n]：HLA 匹配数不少于 n 的供者
+        RoaringBitmap[] atLeast = new RoaringBitmap[5];
+        atLeast[4] = RoaringBitmap.and(a[2], b[2]);
+        atLeast[3] = RoaringBitmap.or(RoaringBitmap.and(a[2], b[1]), RoaringBitmap.and(a[1], b[2]));
+        atLeast[2] = RoaringBitmap.or(RoaringBitmap.or(a[2], b[2]), RoaringBitmap.and(a[1], b[1]));
+        atLeast[1] = RoaringBitmap.or(a[1], b[1]);
+
+        List<RoaringBitmap> buckets = new ArrayList<>(6);
+        RoaringBitmap higher = new RoaringBitmap();
+        for (int n = 4; n >= 1; n--) {
+            buckets.add(RoaringBitmap.andNot(RoaringBitmap.and(survivors, atLeast[n]), higher));
+            higher = atLeast[n];
+        }
+        buckets.add(RoaringBitmap.andNot(survivors, higher));
+        buckets.add(conflicted);
+        return buckets;
+    }
 
-        double hpaScore = 0.0;
-        double currentHpaWeight = 0.0;
-        double maxHpaWeight = 0.0;
+    /**
+     * 单个位点 (A 或 B) 的匹配集合，与 bestMatches 的交叉取最大规则一致
+     * [1] 至少匹配 1 条，[2] 两条都匹配
+     */
+    private RoaringBitmap[] locusMatches(HlaInfo p1, HlaInfo p2, int chain1, int chain2) {
+        int g1 = p1 != null ? p1.group : DonorIndex.NONE;
+        int g2 = p2 != null ? p2.group : DonorIndex.NONE;
+
+        RoaringBitmap one = RoaringBitmap.or(
+                RoaringBitmap.or(donorIndex.carrying(chain1, g1), donorIndex.carrying(chain2, g1)),
+                RoaringBitmap.or(donorIndex.carrying(chain1, g2), donorIndex.carrying(chain2, g2)));
+        RoaringBitmap two = RoaringBitmap.or(
+                RoaringBitmap.and(donorIndex.carrying(chain1, g1), donorIndex.carrying(chain2, g2)),
+                RoaringBitmap.and(donorIndex.carrying(chain1, g2), donorIndex.carrying(chain2, g1)));
+        return new RoaringBitmap[]{null, one, two};
+    }
 
-        for (String locus : matchConfig.getAllHpas()) {
-            if (!selectedHpaLoci.contains(locus)) continue;
+    // 只为最终返回的结果加载 Donor 实体；期间被删除的供者直接跳过
+    private List<MatchResult> hydrate(List<MatchResult> results) {
+        long start = System.nanoTime();
+        List<String> ids = new ArrayList<>(results.size());
+        results.forEach(r -> ids.add(r.donorId));
+        List<MatchResult> hydrated = attach(results, loadDonors(ids));
+        metrics.hydrate(System.nanoTime() - start, hydrated.size());
+        return hydrated;
+    }
 
-            String pVal = pGts.get(locus);
-            String dVal = d.getGenotype(locus);
+    private Map<String, Donor> loadDonors(Collection<String> ids) {
+        Map<String, Donor> donors = new HashMap<>();
+        repository.findAllById(ids).forEach(d -> donors.put(d.getDonorId(), d));
+        return donors;
+    }
 
-            maxHpaWeight += 5.0;
+    private List<MatchResult> attach(List<MatchResult> results, Map<String, Donor> donors) {
+        List<MatchResult> hydrated = new ArrayList<>(results.size());
+        for (MatchResult r : results) {
+            Donor d = donors.get(r.donorId);
+            if (d == null) continue;
+            r.donor = d;
+            DonorUsage u = donorUsage.get(r.donorId);
+            if (u != null) {
+                r.selectionCount = u.getSelectionCount();
+                r.transfusedCount = u.getTransfusedCount();
+                r.lastMatchDate = u.getLastMatchDate();
+            }
+            hydrated.add(r);
+        }
+        return hydrated;
+    }
 
-            if (dVal == null || dVal.isEmpty()) {
-                mr.unknownLoci.add(locus);
+    /**
+     * 计算单个供者的分数
+     * mr 为 null 时只算分 (排名热路径，不产生任何对象)；
+     * mr 不为 null 时同时填充匹配位点、高亮、冲突原因等明细。
+     */
+    private double score(int ord, MatchQuery q, MatchResult mr) {
+        ScoringKernel k = q.kernel;
+        int a1 = donorIndex.hlaA1(ord), a2 = donorIndex.hlaA2(ord);
+        int b1 = donorIndex.hlaB1(ord), b2 = donorIndex.hlaB2(ord);
+
+        int conflictCount = 0;
+        if (q.bannedGroups.length > 0) {
+            conflictCount += checkConflict(a1, "HLA-A1", q.bannedSet, mr);
+            conflictCount += checkConflict(a2, "HLA-A2", q.bannedSet, mr);
+            conflictCount += checkConflict(b1, "HLA-B1", q.bannedSet, mr);
+            conflictCount += checkConflict(b2, "HLA-B2", q.bannedSet, mr);
+        }
+
+        int matchCount = bestMatches(q.a1, q.a2, a1, a2, mr, "HLA-A")
+                + bestMatches(q.b1, q.b2, b1, b2, mr, "HLA-B");
+        double totalScore = matchCount * k.hlaMatchPoints();
+
+        double hpaScore = 0.0;
+        double earned = 0.0;
+        double maxHpaWeight = 0.0;
+        for (int i = 0; i < q.hpaSlots.length; i++) {
+            int slot = q.hpaSlots[i];
+            byte dCode = donorIndex.hpa(slot, ord);
+            maxHpaWeight += k.maxPoints(slot);
+
+            if (dCode == HpaCodec.UNKNOWN) {
+                if (mr != null) mr.unknownLoci.add(q.hpaLoci[i]);
+                continue;
+            }
+            int level = k.compat(q.hpaCodes[i], dCode);
+            double pts = k.points(slot, level);
+            hpaScore += pts;
+            if (level == ScoringKernel.MATCHED) {
+                earned += pts;
+                if (mr != null) mr.matchedLoci.add(q.hpaLoci[i]);
+            } else if (level == ScoringKernel.COMPATIBLE) {
+                earned += pts;
+                if (mr != null) mr.compatibleLoci.add(q.hpaLoci[i]);
             } else {
-                int pts = matchConfig.getScore(pVal, dVal);
-                if (pts == 2) {
-                    mr.matchedLoci.add(locus);
-                    hpaScore += 5.0;
-                    currentHpaWeight += 5.0;
-                } else if (pts == 1) {
-                    mr.compatibleLoci.add(locus);
-                    hpaScore += 2.0;
-                    currentHpaWeight += 2.0;
-                } else {
-                    mr.mismatchedLoci.add(locus);
-                }
+                if (mr != null) mr.mismatchedLoci.add(q.hpaLoci[i]);
             }
         }
 
         totalScore += hpaScore;
-        totalScore -= (mr.conflictCount * 1000.0);
+        totalScore -= (conflictCount * k.conflictPenalty());
 
-        mr.score = totalScore;
-        mr.rate = (maxHpaWeight > 0) ? (currentHpaWeight / maxHpaWeight) * 100.0 : 0;
-        if (mr.rate > 100) mr.rate = 100;
+        if (mr != null) {
+            if (matchCount == 4) mr.grade = "A";
+            else if (matchCount == 3) mr.grade = "B";
+            else if (matchCount == 1 || matchCount == 2) mr.grade = "C";
+            else mr.grade = "D";
 
-        return mr;
+            mr.score = totalScore;
+            mr.rate = (maxHpaWeight > 0) ? (earned / maxHpaWeight) * 100.0 : 0;
+            if (mr.rate > 100) mr.rate = 100;
+        }
+        return totalScore;
     }
 
-    private void checkConflict(Integer donorGroup, String label, List<Integer> bannedGroups, MatchResult mr) {
-        if (donorGroup == null) return;
-        if (bannedGroups.contains(donorGroup)) {
+    private int checkConflict(int donorGroup, String label, RoaringBitmap bannedGroups, MatchResult mr) {
+        if (donorGroup == DonorIndex.NONE || !bannedGroups.contains(donorGroup)) return 0;
+        if (mr != null) {
             mr.conflictCount++;
             mr.conflictReasons.add(label + " (Group " + donorGroup + ") 包含排斥抗原");
         }
+        return 1;
     }
 
-    private int countBestMatches(HlaInfo p1, HlaInfo p2, Integer d1, Integer d2, MatchResult mr, String type) {
+    private int bestMatches(HlaInfo p1, HlaInfo p2, int d1, int d2, MatchResult mr, String type) {
         if (p1 == null && p2 == null) return 0;
 
         boolean m1_1 = isMatch(p1, d1);
@@ -209,29 +645,60 @@ public class DonorService {
         int score2 = (m2_1 ? 1 : 0) + (m2_2 ? 1 : 0);
 
         if (score1 >= score2) {
-            if (m1_1) mr.highlightedAlleles.add(type + "1");
-            if (m1_2) mr.highlightedAlleles.add(type + "2");
-            if (score1 > 0) mr.matchedLoci.add(type);
+            if (mr != null) {
+                if (m1_1) mr.highlightedAlleles.add(type + "1");
+                if (m1_2) mr.highlightedAlleles.add(type + "2");
+                if (score1 > 0) mr.matchedLoci.add(type);
+            }
             return score1;
         } else {
-            if (m2_2) mr.highlightedAlleles.add(type + "1");
-            if (m2_1) mr.highlightedAlleles.add(type + "2");
-            if (score2 > 0) mr.matchedLoci.add(type);
+            if (mr != null) {
+                if (m2_2) mr.highlightedAlleles.add(type + "1");
+                if (m2_1) mr.highlightedAlleles.add(type + "2");
+                if (score2 > 0) mr.matchedLoci.add(type);
+            }
             return score2;
         }
     }
 
-    private boolean isMatch(HlaInfo p, Integer dGroup) {
-        if (p == null || dGroup == null) return false;
+    private boolean isMatch(HlaInfo p, int dGroup) {
+        if (p == null || dGroup == DonorIndex.NONE) return false;
         return p.group == dGroup;
     }
 
+    /**
+     * 按供者使用统计重新排序完整的结果列表 (同值保持原有的分数顺序)
+     * selections: 被选中次数多的在前；recent: 最近使用的在前；idle: 从未使用或最久未使用的在前
+     * sort 为空或 score 时返回 null (保持分数顺序)，其他值抛出 IllegalArgumentException
+     */
+    public static Comparator<MatchResult> usageOrder(String sort) {
+        if (sort == null || sort.isEmpty() || "score".equals(sort)) return null;
+        switch (sort) {
+            case "selections":
+                return Comparator.comparingInt((MatchResult r) -> r.selectionCount).reversed();
+            case "recent":
+                return Comparator.comparing((MatchResult r) -> r.lastMatchDate,
+                        Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()));
+            case "idle":
+                return Comparator.comparing((MatchResult r) -> r.lastMatchDate,
+                        Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+            default:
+                throw new IllegalArgumentException("不支持的排序方式: " + sort);
+        }
+    }
+
     public static class MatchResult {
+        @JsonIgnore public String donorId;
         public Donor donor;
         public double rate;
         public double score;
         public String grade = "D";
 
+        // 供者使用统计 (来自内存中的 DonorUsageStats)
+        public int selectionCount;
+        public int transfusedCount;
+        public LocalDateTime lastMatchDate;
+
         public List<String> matchedLoci = new ArrayList<>();
         public List<String> compatibleLoci = new ArrayList<>();
         public List<String> mismatchedLoci = new ArrayList<>();
@@ -240,8 +707,8 @@ public class DonorService {
         public int conflictCount = 0;
         public List<String> conflictReasons = new ArrayList<>();
 
-        public MatchResult(Donor d) {
-            this.donor = d;
+        public MatchResult(String donorId) {
+            this.donorId = donorId;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.DonorUsage;
+import com.example.bloodsystem.entity.MatchRecord;
+import com.example.bloodsystem.repository.DonorUsageRepository;
+import com.example.bloodsystem.util.TransactionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 供者使用统计 (被选中次数、输血次数、最近一次配型时间)
+ * 持久化在 donor_usage 表，随配型记录的增删改在同一事务内增量更新；
+ * 内存中保留一份副本，配型结果直接从这里取，不为每个候选查询或聚合 match_records。
+ * 本节点的写入在提交后重新读取受影响的行；其他节点的写入靠定期重新加载 (stats.donor-usage.refresh-ms) 补上。
+ */
+@Component
+public class DonorUsageStats {
+
+    private static final Logger log = LoggerFactory.getLogger(DonorUsageStats.class);
+
+    @Autowired private DonorUsageRepository repository;
+
+    private volatile Map<String, DonorUsage> data;
+    // 整体重新加载期间，本节点提交后刷新过的供者；替换前在新副本上再刷新一次，避免被较旧的加载结果覆盖
+    // (与 data 的修改一起由 this 锁保护)
+    private Set<String> pending;
+    // 内存副本每次变化时递增 (配型结果的 ETag 使用)
+    private final AtomicLong version = new AtomicLong();
+
+    // --- 写入 (需在配型记录变更所在的事务内调用) ---
+
+    public void recordSelection(String donorId, LocalDateTime matchDate) {
+        repository.addSelection(donorId, matchDate);
+        refreshAfterCommit(List.of(donorId));
+    }
+
+    // 调用前配型记录的新状态需已写入 (flush)：统计行缺失时按配型记录重算
+    public void recordStatusChange(String donorId, String oldStatus, String newStatus) {
+        int delta = (MatchRecord.TRANSFUSED.equals(newStatus) ? 1 : 0) - (MatchRecord.TRANSFUSED.equals(oldStatus) ? 1 : 0);
+        if (delta == 0) return;
+        if (repository.addTransfused(donorId, delta) == 0) repository.recompute(List.of(donorId));
+        refreshAfterCommit(List.of(donorId));
+    }
+
+    // 这些供者的部分配型记录已被删除
+    public void recompute(Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return;
+        repository.recompute(donorIds);
+        refreshAfterCommit(donorIds);
+    }
+
+    // 这些供者已被删除
+    public void remove(Collection<String> donorIds) {
+        if (donorIds.isEmpty()) return;
+        repository.deleteAll(donorIds);
+        refreshAfterCommit(donorIds);
+    }
+
+    /**
+     * 从没有使用统计的版本升级时 donor_usage 为空：启动后由已有的配型记录回填，不需要手动重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            int rows = repository.backfillIfEmpty();
+            if (rows > 0) {
+                log.info("已由配型记录回填供者使用统计: {} 名供者", rows);
+                refresh();
+            }
+        } catch (Exception e) {
+            log.warn("回填供者使用统计失败，可调用 /api/admin/donor-usage/rebuild 重建: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 由 match_records 整表重建 (修复不一致)，返回有配型记录的供者数
+     */
+    @Transactional
+    public int rebuild() {
+        int rows = repository.rebuild();
+        TransactionUtils.afterCommit(() -> reload(true));
+        log.info("供者使用统计已重建: {} 名供者", rows);
+        return rows;
+    }
+
+    private void refreshAfterCommit(Collection<String> donorIds) {
+        List<String> ids = List.copyOf(donorIds);
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                // 尚未加载时无需维护，首次使用时会完整加载
+                if (data == null) return;
+                if (pending != null) pending.addAll(ids);
+                reloadRows(data, ids);
+                version.incrementAndGet();
+            }
+        });
+    }
+
+    private void reloadRows(Map<String, DonorUsage> d, Collection<String> ids) {
+        ids.forEach(d::remove);
+        repository.findAll(ids).forEach(u -> d.put(u.getDonorId(), u));
+    }
+
+    // --- 读取 ---
+
+    /**
+     * 没有配型记录的供者返回 null
+     */
+    public DonorUsage get(String donorId) {
+        return ensureLoaded().get(donorId);
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    // --- 加载与定期重新加载 ---
+
+    @Scheduled(fixedDelayString = "${stats.donor-usage.refresh-ms:60000}",
+            initialDelayString = "${stats.donor-usage.refresh-ms:60000}")
+    public void refresh() {
+        try {
+            reload(false);
+        } catch (Exception e) {
+            log.warn("重新加载供者使用统计失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 整体重新加载：加载不持锁，期间本节点提交的更新记入 pending，替换前补到新副本上
+     * force 为 false 时内容没有变化不递增版本，避免配型结果的 ETag 无故失效
+     */
+    private void reload(boolean force) {
+        synchronized (this) {
+            if (data == null) return;
+            pending = new HashSet<>();
+        }
+        Map<String, DonorUsage> fresh;
+        try {
+            fresh = load();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            Set<String> touched = pending;
+            pending = null;
+            if (!touched.isEmpty()) reloadRows(fresh, touched);
+            if (force || !fresh.equals(data)) {
+                data = fresh;
+                version.incrementAndGet();
+            }
+        }
+    }
+
+    private Map<String, DonorUsage> ensureLoaded() {
+        Map<String, DonorUsage> d = data;
+        if (d != null) return d;
+        synchronized (this) {
+            if (data == null) data = load();
+            return data;
+        }
+    }
+
+    private Map<String, DonorUsage> load() {
+        Map<String, DonorUsage> d = new ConcurrentHashMap<>();
+        repository.forEach(u -> d.put(u.getDonorId(), u));
+        return d;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.util.HpaCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次性回填 hpa_code
+ * 新增该列之前写入的供者/患者 hpa_code 为空，启动后按批补齐；已回填的行不会再被选中。
+ * 回填完成前配型索引对这些行仍按 HPA 字符串编码，结果不受影响。
+ */
+@Component
+public class HpaCodeBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(HpaCodeBackfill.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String HPA_COLUMNS = "hpa1, hpa2, hpa3, hpa4, hpa5, hpa6, hpa10, hpa15, hpa21";
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        try {
+            backfill("donors", "donor_id");
+            backfill("patients", "patient_id");
+        } catch (Exception e) {
+            // 回填失败不影响使用，下次启动会继续
+            log.warn("hpa_code 回填中断: {}", e.getMessage());
+        }
+    }
+
+    private void backfill(String table, String idColumn) {
+        String select = "SELECT " + idColumn + ", " + HPA_COLUMNS + " FROM " + table
+                + " WHERE hpa_code IS NULL LIMIT " + BATCH_SIZE;
+        String update = "UPDATE " + table + " SET hpa_code = ? WHERE " + idColumn + " = ?";
+
+        long total = 0;
+        while (true) {
+            List<Object[]> args = jdbcTemplate.query(select, (rs, rowNum) -> {
+                Map<String, String> genotypes = new HashMap<>();
+                for (int i = 0; i < HpaCodec.LOCI.size(); i++) {
+                    genotypes.put(HpaCodec.LOCI.get(i), rs.getString(2 + i));
+                }
+                return new Object[]{HpaCodec.pack(genotypes), rs.getString(1)};
+            });
+            if (args.isEmpty()) break;
+            jdbcTemplate.batchUpdate(update, args);
+            total += args.size();
+            if (args.size() < BATCH_SIZE) break;
+        }
+        if (total > 0) log.info("{} 表 hpa_code 回填完成: {} 行", table, total);
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.ImportJob;
+import com.example.bloodsystem.repository.ImportJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台导入任务
+ * 上传文件先落盘，再由导入线程按批导入；每批提交时同一事务内记录检查点。
+ * 进程退出时未完成的任务保持 RUNNING，下次启动后从检查点继续。
+ * 多实例部署时任务归属于接收上传的节点，该节点定期续约；节点停止且租约过期后，
+ * 其他节点从共享的落盘目录接管，从检查点继续。
+ * 已取消 / 失败任务的上传文件保留一段时间供继续，过期后由定时清理删除。
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+    // 内存中最多保留的已结束任务状态 (含错误详情)，更早的只能从数据库查到计数
+    private static final int MAX_FINISHED = 100;
+
+    @Autowired private ImportService importService;
+    @Autowired private ImportJobRepository jobRepository;
+    @Autowired private DonorChangeFeed changeFeed;
+
+    // 必须配置：持久目录 (重启后续传)，多实例部署时为各节点共享的目录
+    @Value("${import.job.spool-dir}")
+    private String spoolDir;
+
+    // 任务租约时长，持有节点按 import.job.heartbeat-ms 续约
+    @Value("${import.job.lease-seconds:120}")
+    private long leaseSeconds;
+
+    // 已取消 / 失败任务的上传文件保留时长，过期后删除，任务不能再继续
+    @Value("${import.job.spool-retention-hours:72}")
+    private long spoolRetentionHours;
+
+    private final Map<String, ImportResult> jobs = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private String nodeId;
+
+    @PostConstruct
+    public void start() {
+        nodeId = changeFeed.nodeId();
+        // 单线程顺序执行，避免多个大导入同时争用数据库
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "import-job"));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdownNow();
+        // 等导入线程提交完当前批次再继续关闭 (之后 ImportService 会停止写入线程)
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("导入任务未能在 30 秒内停止，下次启动从检查点继续");
+        }
+    }
+
+    /**
+     * 继续未完成的任务：本节点上次退出时留下的，以及租约已过期 (所属节点已停止) 的；
+     * 其他节点仍在续约的任务不动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resumeInterrupted() {
+        LocalDateTime now = LocalDateTime.now();
+        for (ImportJob job : jobRepository.findByStatusIn(List.of(ImportJob.QUEUED, ImportJob.RUNNING))) {
+            ImportResult live = jobs.get(job.getJobId());
+            if (live != null && isActive(live.getStatus())) continue;
+            boolean own = nodeId.equals(job.getOwnerNode());
+            if (!own && job.getLeaseUntil() != null && job.getLeaseUntil().isAfter(now)) continue;
+            if (job.getSpoolPath() == null || !Files.exists(Paths.get(job.getSpoolPath()))) {
+                log.warn("导入任务 {} 的上传文件在本节点不存在，不接管 (import.job.spool-dir 应为各节点共享的目录): {}",
+                        job.getJobId(), job.getSpoolPath());
+                continue;
+            }
+            // 条件更新认领，多个节点同时接管时只有一个成功
+            if (jobRepository.claim(job.getJobId(), nodeId, leaseExpiry(), now) == 0) continue;
+            if (own) {
+                log.info("继续未完成的导入任务 {} (从第 {} 行之后开始)", job.getJobId(), job.getCheckpointLine());
+            } else {
+                log.info("接管节点 {} 的导入任务 {} (从第 {} 行之后开始)",
+                        job.getOwnerNode(), job.getJobId(), job.getCheckpointLine());
+            }
+            enqueue(job);
+        }
+    }
+
+    // 续约本节点的任务，并接管租约已过期的任务
+    @Scheduled(fixedDelayString = "${import.job.heartbeat-ms:30000}",
+            initialDelayString = "${import.job.heartbeat-ms:30000}")
+    public void heartbeat() {
+        try {
+            jobRepository.renewLeases(nodeId, leaseExpiry(), List.of(ImportJob.QUEUED, ImportJob.RUNNING));
+            resumeInterrupted();
+        } catch (Exception e) {
+            log.warn("导入任务续约失败: {}", e.getMessage());
+        }
+    }
+
+    private LocalDateTime leaseExpiry() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds);
+    }
+
+    public ImportResult submit(InputStream in, String filename) throws IOException {
+        Path dir = Paths.get(spoolDir);
+        Files.createDirectories(dir);
+        String jobId = UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+        Path spool = dir.resolve(jobId + ".upload");
+        Files.copy(in, spool);
+
+        ImportJob job = new ImportJob();
+        job.setJobId(jobId);
+        job.setFilename(filename);
+        job.setSpoolPath(spool.toString());
+        job.setStatus(ImportJob.QUEUED);
+        job.setOwnerNode(nodeId);
+        job.setLeaseUntil(leaseExpiry());
+        jobRepository.save(job);
+        return enqueue(job);
+    }
+
+    /**
+     * 任务状态；内存中没有时从数据库还原 (不含错误详情)，任务不存在时返回 null
+     */
+    public ImportResult getStatus(String jobId) {
+        ImportResult live = jobs.get(jobId);
+        if (live != null) return live;
+        return jobRepository.findById(jobId).map(this::toStatus).orElse(null);
+    }
+
+    public ImportResult cancel(String jobId) {
+        ImportResult live = jobs.get(jobId);
+        if (live != null && isActive(live.getStatus())) {
+            // 导入线程在下一行检查该标记
+            live.setCancelRequested(true);
+            return live;
+        }
+        ImportJob job = jobRepository.findById(jobId).orElseThrow(() -> new RuntimeException("导入任务不存在: " + jobId));
+        if (isActive(job.getStatus())) {
+            job.setStatus(ImportJob.CANCELLED);
+            jobRepository.save(job);
+        }
+        return toStatus(job);
+    }
+
+    /**
+     * 继续已取消或失败的任务 (从检查点之后开始)
+     */
+    public synchronized ImportResult resume(String jobId) {
+        ImportJob job = jobRepository.findById(jobId).orElseThrow(() -> new RuntimeException("导入任务不存在: " + jobId));
+        if (!ImportJob.CANCELLED.equals(job.getStatus()) && !ImportJob.FAILED.equals(job.getStatus())) {
+            throw new RuntimeException("只有已取消或失败的任务可以继续");
+        }
+        if (job.getSpoolPath() == null || !Files.exists(Paths.get(job.getSpoolPath()))) {
+            throw new RuntimeException("上传文件已被清理，请重新上传");
+        }
+        job.setStatus(ImportJob.QUEUED);
+        job.setLastError(null);
+        job.setOwnerNode(nodeId);
+        job.setLeaseUntil(leaseExpiry());
+        jobRepository.save(job);
+        return enqueue(job);
+    }
+
+    /**
+     * 删除已取消 / 失败且超过保留时长的任务的上传文件 (完成的任务在结束时已删除)
+     * 与 resume 互斥，避免刚被继续的任务的文件被删掉
+     */
+    @Scheduled(fixedDelayString = "${import.job.spool-sweep-ms:3600000}",
+            initialDelayString = "${import.job.spool-sweep-ms:3600000}")
+    public synchronized void sweepSpools() {
+        LocalDateTime before = LocalDateTime.now().minusHours(spoolRetentionHours);
+        for (ImportJob job : jobRepository.findEndedBefore(List.of(ImportJob.CANCELLED, ImportJob.FAILED), before)) {
+            try {
+                Files.deleteIfExists(Paths.get(job.getSpoolPath()));
+            } catch (IOException e) {
+                log.warn("删除导入临时文件失败: {}", job.getSpoolPath());
+                continue;
+            }
+            job.setSpoolPath(null);
+            jobRepository.save(job);
+            log.info("已清理导入任务 {} 的上传文件", job.getJobId());
+        }
+    }
+
+    private ImportResult enqueue(ImportJob job) {
+        ImportResult status = toStatus(job);
+        status.setStatus(ImportJob.QUEUED);
+        jobs.put(job.getJobId(), status);
+        executor.submit(() -> run(job.getJobId(), status));
+        return status;
+    }
+
+    private void run(String jobId, ImportResult status) {
+        ImportJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) return;
+        if (status.isCancelRequested()) {
+            finish(job, status, ImportJob.CANCELLED, null);
+            return;
+        }
+
+        job.setStatus(ImportJob.RUNNING);
+        jobRepository.save(job);
+        status.setStatus(ImportJob.RUNNING);
+        status.setStartedAt(System.currentTimeMillis());
+        status.setResumedFromLine(job.getCheckpointLine());
+
+        Path spool = Paths.get(job.getSpoolPath());
+        try (InputStream in = Files.newInputStream(spool)) {
+            importService.importFile(in, job.getFilename(), status, job.getCheckpointLine(),
+                    (line, ok, failed) -> jobRepository.saveCheckpoint(jobId, line, ok, failed));
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 进程正在退出时读取被中断 (ClosedByInterruptException 等)：与下面一样保持 RUNNING
+                log.info("导入任务 {} 中断于第 {} 行", jobId, status.getCheckpointLine());
+                return;
+            }
+            log.warn("导入任务 {} 失败", jobId, e);
+            finish(job, status, ImportJob.FAILED, e.getMessage());
+            return;
+        }
+
+        if (status.isCancelRequested()) {
+            finish(job, status, ImportJob.CANCELLED, null);
+        } else if (Thread.currentThread().isInterrupted()) {
+            // 进程正在退出：保持 RUNNING，下次启动从检查点继续
+            log.info("导入任务 {} 中断于第 {} 行", jobId, status.getCheckpointLine());
+        } else {
+            finish(job, status, ImportJob.COMPLETED, null);
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("删除导入临时文件失败: {}", spool);
+            }
+        }
+    }
+
+    private void finish(ImportJob job, ImportResult status, String result, String error) {
+        // 检查点与计数已在各批次事务中写入，这里重新读取后只更新状态
+        ImportJob latest = jobRepository.findById(job.getJobId()).orElse(job);
+        latest.setStatus(result);
+        latest.setFailureCount(status.getFailureCount());
+        if (error != null) latest.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+        jobRepository.save(latest);
+
+        status.setStatus(result);
+        status.setLastError(latest.getLastError());
+        status.setFinishedAt(System.currentTimeMillis());
+        evictFinished();
+    }
+
+    private void evictFinished() {
+        if (jobs.size() <= MAX_FINISHED) return;
+        jobs.values().stream()
+                .filter(s -> !isActive(s.getStatus()))
+                .sorted((a, b) -> Long.compare(a.getFinishedAt(), b.getFinishedAt()))
+                .limit(jobs.size() - MAX_FINISHED)
+                .forEach(s -> jobs.remove(s.getJobId()));
+    }
+
+    private static boolean isActive(String status) {
+        return ImportJob.QUEUED.equals(status) || ImportJob.RUNNING.equals(status);
+    }
+
+    private ImportResult toStatus(ImportJob job) {
+        ImportResult status = new ImportResult();
+        status.setJobId(job.getJobId());
+        status.setFilename(job.getFilename());
+        status.setStatus(job.getStatus());
+        status.setSuccessCount(job.getSuccessCount() != null ? job.getSuccessCount() : 0);
+        status.setFailureCount(job.getFailureCount() != null ? job.getFailureCount() : 0);
+        status.setCheckpointLine(job.getCheckpointLine() != null ? job.getCheckpointLine() : 0);
+        status.setRowsParsed(status.getCheckpointLine());
+        status.setLastError(job.getLastError());
+        return status;
+    }
+}
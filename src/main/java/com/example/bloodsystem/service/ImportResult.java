@@ -1,14 +1,33 @@
 package com.example.bloodsystem.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * 导入结果；后台导入任务中同时作为实时状态 (导入线程写入，进度接口读取)
+ */
 @Data
 public class ImportResult {
-    private int successCount = 0;
-    private int failureCount = 0;
-    private List<String> errorMessages = new ArrayList<>();
+    private volatile int successCount = 0;
+    private volatile int failureCount = 0;
+    private List<String> errorMessages = new CopyOnWriteArrayList<>();
+
+    // --- 以下仅后台导入任务使用 ---
+    private String jobId;
+    private String filename;
+    private volatile String status;
+    // 已读取到的行号
+    private volatile long rowsParsed = 0;
+    // 最后一个已提交批次的末行行号 (检查点)
+    private volatile long checkpointLine = 0;
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+    private volatile String lastError;
+    @JsonIgnore private volatile boolean cancelRequested = false;
+    // 本次运行开始时的行号 (断点续传时不为 0)，用于计算速度
+    @JsonIgnore private volatile long resumedFromLine = 0;
 
     public void addSuccess(int count) {
         this.successCount += count;
@@ -25,4 +44,12 @@ public class ImportResult {
     public List<String> getErrorMessages() {
         return errorMessages;
     }
-}
\ No newline at end of file
+
+    // 每秒处理行数
+    public double getThroughput() {
+        if (startedAt == 0) return 0;
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = Math.max(1, end - startedAt);
+        return (rowsParsed - resumedFromLine) * 1000.0 / elapsed;
+    }
+}
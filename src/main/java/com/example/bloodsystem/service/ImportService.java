@@ -1,72 +1,305 @@
 package com.example.bloodsystem.service;
 
 import com.example.bloodsystem.entity.Donor;
-import com.example.bloodsystem.repository.DonorRepository;
+import com.example.bloodsystem.repository.DonorBulkRepository;
 import com.example.bloodsystem.util.HlaUtils;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 @Service
 public class ImportService {
-    @Autowired private DonorRepository repository;
+    @Autowired private DonorBulkRepository bulkRepository;
     @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private DonorIndex donorIndex;
+    @Autowired private DonorChangeFeed changeFeed;
+    @Autowired private MeterRegistry registry;
 
     // 批量保存的大小
     private static final int BATCH_SIZE = 1000;
 
+    // 解析线程数，0 表示 CPU 核数
+    @Value("${import.parse-threads:0}")
+    private int parseThreads;
+
+    private ExecutorService parsePool;
+    private ExecutorService writerPool;
+
+    // 导入行数 (Prometheus 中用 rate() 得到每秒行数)：成功写入、解析失败、所在批次保存失败
+    private Counter importedRows, invalidRows, failedRows;
+
+    @PostConstruct
+    public void start() {
+        importedRows = rowCounter("imported");
+        invalidRows = rowCounter("invalid");
+        failedRows = rowCounter("failed");
+        if (parseThreads <= 0) parseThreads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger parserSeq = new AtomicInteger();
+        parsePool = Executors.newFixedThreadPool(parseThreads, r -> {
+            Thread t = new Thread(r, "import-parse-" + parserSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // 每个导入各用一个写入线程，文本导入不必排在后台任务之后
+        AtomicInteger writerSeq = new AtomicInteger();
+        writerPool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "import-writer-" + writerSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        parsePool.shutdownNow();
+        writerPool.shutdownNow();
+    }
+
+    @Timed(value = "import.requests", extraTags = {"type", "text"})
     public ImportResult parseAndImportText(String textData) {
+        if (textData == null || textData.trim().isEmpty()) return new ImportResult();
+        return parseAndImport(new StringReader(textData), '\t');
+    }
+
+    public ImportResult parseAndImport(Reader input, char delimiter) {
         ImportResult result = new ImportResult();
-        if (textData == null || textData.trim().isEmpty()) return result;
+        try {
+            importLines(input, delimiter, result, 0, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.addError("系统错误: " + e.getMessage());
+        }
+        return result;
+    }
 
-        List<Donor> batchList = new ArrayList<>(BATCH_SIZE);
+    /**
+     * 每批提交时在同一事务内调用，用于保存检查点
+     */
+    public interface Checkpoint {
+        void save(long line, int successCount, int failureCount);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new StringReader(textData))) {
+    /**
+     * 后台任务导入 (上传文件)：边读边解析，内存中只保留一个批次
+     * 文件名以 .csv / .csv.gz 结尾按逗号分隔，其余按 Tab 分隔；gzip 压缩按文件头自动识别
+     * 跳过检查点之前的行，进度实时写入 status
+     * 请求取消或线程被中断时停止读取，已读取但未提交的批次丢弃 (检查点不前进)
+     */
+    public void importFile(InputStream in, String filename, ImportResult status,
+                           long skipLines, Checkpoint checkpoint) throws IOException {
+        importLines(openReader(in), delimiterOf(filename), status, skipLines, checkpoint);
+    }
+
+    // --- 流水线：读取 (调用线程) -> 解析 (多线程) -> 写入 (单线程，按顺序提交) ---
+
+    // 一段原始行 (约 BATCH_SIZE 行)，解析后整段作为一个批次提交
+    private static class Chunk {
+        final long lastLine;
+        final List<Donor> donors;
+        final List<String> errors;
+
+        Chunk(long lastLine, List<Donor> donors, List<String> errors) {
+            this.lastLine = lastLine;
+            this.donors = donors;
+            this.errors = errors;
+        }
+    }
+
+    // 写入线程收到它即结束
+    private static final Future<Chunk> END = CompletableFuture.completedFuture(null);
+
+    private void importLines(Reader input, char delimiter, ImportResult result,
+                             long skipLines, Checkpoint checkpoint) throws IOException {
+        // 队列有界：解析或写入跟不上时读取线程阻塞 (背压)，内存中最多保留 队列长度 个批次
+        BlockingQueue<Future<Chunk>> pending = new ArrayBlockingQueue<>(Math.max(2, parseThreads * 2));
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        Future<?> writer = writerPool.submit(() -> {
+            writeChunks(pending, result, checkpoint, aborted);
+            return null;
+        });
+
+        try (BufferedReader reader = new BufferedReader(input, 64 * 1024)) {
             String line;
-            int lineNum = 0;
+            long lineNum = 0;
+            long firstLine = 0;
+            List<String> lines = new ArrayList<>(BATCH_SIZE);
             while ((line = reader.readLine()) != null) {
                 lineNum++;
-                // 仅去除首尾空白，保留行内 Tab 结构
-                line = line.trim();
-
-                if (line.isEmpty() || isHeader(line)) continue;
+                if (lineNum <= skipLines) continue;
+                if (result.isCancelRequested() || Thread.currentThread().isInterrupted() || writer.isDone()) {
+                    aborted.set(true);
+                    break;
+                }
+                if (lines.isEmpty()) firstLine = lineNum;
+                lines.add(line);
 
-                Donor donor = parseLine(line);
-                if (donor != null) {
-                    batchList.add(donor);
-                } else {
-                    result.addError("第 " + lineNum + " 行格式错误或数据不足");
+                if (lines.size() >= BATCH_SIZE) {
+                    if (!submitChunk(pending, firstLine, lines, delimiter, writer)) break;
+                    lines = new ArrayList<>(BATCH_SIZE);
                 }
+            }
+            if (!lines.isEmpty() && !aborted.get()) submitChunk(pending, firstLine, lines, delimiter, writer);
+        } finally {
+            // 先清除中断标记再放入结束标记：带着中断标记 offer 会立即抛出异常，
+            // 结束标记放不进队列，写入线程就一直阻塞在 take()
+            boolean interrupted = Thread.interrupted();
+            if (interrupted) aborted.set(true);
+            try {
+                enqueue(pending, END, writer);
+                awaitWriter(writer);
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                if (batchList.size() >= BATCH_SIZE) {
-                    saveBatch(batchList, result);
-                    batchList.clear();
+    private boolean submitChunk(BlockingQueue<Future<Chunk>> pending, long firstLine, List<String> lines,
+                                char delimiter, Future<?> writer) {
+        List<String> chunkLines = lines;
+        return enqueue(pending, parsePool.submit(() -> parseChunk(firstLine, chunkLines, delimiter)), writer);
+    }
+
+    // 队列满时等待；写入线程已退出或当前线程被中断时放弃
+    private static boolean enqueue(BlockingQueue<Future<Chunk>> pending, Future<Chunk> item, Future<?> writer) {
+        try {
+            while (!writer.isDone()) {
+                if (pending.offer(item, 100, TimeUnit.MILLISECONDS)) return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static void awaitWriter(Future<?> writer) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    writer.get();
+                    return;
+                } catch (InterruptedException e) {
+                    // 写入线程很快会结束 (已收到结束标记)，等它提交完当前批次，保证检查点准确
+                    interrupted = true;
                 }
             }
-            if (!batchList.isEmpty()) saveBatch(batchList, result);
-        } catch (Exception e) {
-            e.printStackTrace();
-            result.addError("系统错误: " + e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
         }
-        return result;
     }
 
-    private void saveBatch(List<Donor> donors, ImportResult result) {
+    // 解析线程：行号由段首行号推算，错误信息中的行号与单线程时一致
+    private Chunk parseChunk(long firstLine, List<String> lines, char delimiter) {
+        List<Donor> donors = new ArrayList<>(lines.size());
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            long lineNum = firstLine + i;
+            String line = lines.get(i);
+
+            // Excel 导出的 UTF-8 文件带 BOM
+            if (lineNum == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') line = line.substring(1);
+            // 仅去除首尾空白，保留行内 Tab 结构
+            line = line.trim();
+
+            if (line.isEmpty() || isHeader(line)) continue;
+
+            Donor donor = parseLine(line, delimiter);
+            if (donor != null) {
+                donors.add(donor);
+            } else {
+                errors.add("第 " + lineNum + " 行格式错误或数据不足");
+            }
+        }
+        return new Chunk(firstLine + lines.size() - 1, donors, errors);
+    }
+
+    // 写入线程：按读取顺序逐段等待解析结果并提交，检查点单调前进
+    private void writeChunks(BlockingQueue<Future<Chunk>> pending, ImportResult result,
+                             Checkpoint checkpoint, AtomicBoolean aborted) throws Exception {
+        while (true) {
+            Future<Chunk> next = pending.take();
+            if (next == END) return;
+            // 取消或中断后，已解析但未提交的批次直接丢弃 (检查点不前进)，也不必等它解析完
+            if (aborted.get() || result.isCancelRequested()) {
+                next.cancel(false);
+                continue;
+            }
+            Chunk chunk = next.get();
+
+            result.setRowsParsed(chunk.lastLine);
+            chunk.errors.forEach(result::addError);
+            invalidRows.increment(chunk.errors.size());
+            saveBatch(chunk.donors, result, chunk.lastLine, checkpoint);
+        }
+    }
+
+    private static Reader openReader(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(2);
+        int b1 = buffered.read(), b2 = buffered.read();
+        buffered.reset();
+        InputStream source = (b1 == 0x1f && b2 == 0x8b) ? new GZIPInputStream(buffered, 64 * 1024) : buffered;
+        return new InputStreamReader(source, StandardCharsets.UTF_8);
+    }
+
+    private static char delimiterOf(String filename) {
+        String name = filename != null ? filename.toLowerCase() : "";
+        return name.endsWith(".csv") || name.endsWith(".csv.gz") ? ',' : '\t';
+    }
+
+    private void saveBatch(List<Donor> donors, ImportResult result, long lastLine, Checkpoint checkpoint) {
         if(donors.isEmpty()) return;
+        Timer.Sample sample = Timer.start(registry);
         try {
             transactionTemplate.execute(status -> {
-                repository.saveAll(donors);
-                repository.flush();
+                bulkRepository.upsertAll(donors);
+                List<String> ids = new ArrayList<>(donors.size());
+                donors.forEach(d -> ids.add(d.getDonorId()));
+                changeFeed.recordUpserts(ids);
+                donorIndex.upsertAfterCommit(donors);
+                if (checkpoint != null) {
+                    checkpoint.save(lastLine, result.getSuccessCount() + donors.size(), result.getFailureCount());
+                }
                 return null;
             });
             result.addSuccess(donors.size());
+            result.setCheckpointLine(lastLine);
+            sample.stop(batchTimer("success"));
+            importedRows.increment(donors.size());
         } catch (Exception e) {
             result.addError("批量保存失败: " + e.getMessage());
+            sample.stop(batchTimer("failure"));
+            failedRows.increment(donors.size());
         }
     }
 
+    private Counter rowCounter(String result) {
+        return Counter.builder("import.rows").tag("result", result).register(registry);
+    }
+
+    private Timer batchTimer(String outcome) {
+        return Timer.builder("import.batch").tag("outcome", outcome).register(registry);
+    }
+
     private boolean isHeader(String line) {
         // 简单判断是否为标题行
         return line.toUpperCase().startsWith("NO") ||
@@ -93,13 +326,17 @@ public class ImportService {
 //        return v.toLowerCase();
     }
 
-    private Donor parseLine(String line) {
+    Donor parseLine(String line) {
+        return parseLine(line, '\t');
+    }
+
+    Donor parseLine(String line, char delimiter) {
         try {
             // 🔥 核心修复 1：使用 split("\t", -1) 防止空列导致的数据错位
             // Excel 复制出来的数据严格以 Tab 分隔。
             // 之前的 split("\\s+") 会把 "空ID" 的两个 Tab 合并，导致后续列前移。
             // -1 参数确保 "a\t\tb" 被拆分为 ["a", "", "b"] 而不是 ["a", "b"]
-            String[] parts = line.split("\t", -1);
+            String[] parts = delimiter == '\t' ? line.split("\t", -1) : splitCsv(line, delimiter);
 
             // 简单校验列数，至少要有姓名(0)和一部分基因数据，防止空行干扰
             // 这里的长度判断取决于你的 Excel 模板最少有多少列
@@ -144,4 +381,35 @@ public class ImportService {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 按分隔符拆分 CSV 行，支持双引号包裹的字段 (字段内的 "" 表示一个引号)
+     */
+    private static String[] splitCsv(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(16);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
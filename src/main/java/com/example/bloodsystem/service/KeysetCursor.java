@@ -0,0 +1,45 @@
+package com.example.bloodsystem.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 键集分页游标：方向 + 边界行的排序键，Base64 编码后交给前端原样传回
+ * backward 为 true 表示取边界之前 (上一页) 的行
+ */
+class KeysetCursor {
+
+    final boolean backward;
+    final String key;
+
+    private KeysetCursor(boolean backward, String key) {
+        this.backward = backward;
+        this.key = key;
+    }
+
+    static String next(String key) { return encode("n", key); }
+
+    static String prev(String key) { return encode("p", key); }
+
+    /**
+     * cursor 为空时返回 null (第一页)；格式错误时抛出 IllegalArgumentException
+     */
+    static KeysetCursor parse(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        if (decoded.length() < 3 || decoded.charAt(1) != ':') throw new IllegalArgumentException("无效的游标");
+        char dir = decoded.charAt(0);
+        if (dir != 'n' && dir != 'p') throw new IllegalArgumentException("无效的游标");
+        return new KeysetCursor(dir == 'p', decoded.substring(2));
+    }
+
+    private static String encode(String dir, String key) {
+        String raw = dir + ":" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
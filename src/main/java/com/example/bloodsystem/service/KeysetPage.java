@@ -0,0 +1,75 @@
+package com.example.bloodsystem.service;
+
+import lombok.Data;
+import org.roaringbitmap.IntIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * 键集分页 (按排序键定位，不做 OFFSET 扫描，也不逐页 COUNT)
+ * nextCursor / prevCursor 为 null 表示没有下一页 / 上一页
+ * total 为缓存的近似总数，不需要时为 null
+ */
+@Data
+public class KeysetPage<T> {
+    private List<T> items;
+    private String nextCursor;
+    private String prevCursor;
+    private Long total;
+
+    /**
+     * 在内存中的无序结果 (搜索索引命中的序号) 上做与数据库查询相同的定位：
+     * 向后翻页按列表顺序取 bound 之后的前 limit 个，向前翻页取 bound 之前紧邻的 limit 个 (逆序)；
+     * bound 为 null 时从开头取。只保留 limit 个的堆，不对全部命中排序。
+     */
+    static <K> List<K> seek(IntIterator ords, IntFunction<K> keyOf, Comparator<K> order,
+                            K bound, boolean backward, int limit) {
+        Comparator<K> cmp = backward ? order.reversed() : order;
+        // 堆顶为当前保留的最靠后一个
+        PriorityQueue<K> heap = new PriorityQueue<>(limit + 1, cmp.reversed());
+        while (ords.hasNext()) {
+            K key = keyOf.apply(ords.next());
+            if (bound != null && cmp.compare(key, bound) <= 0) continue;
+            if (heap.size() < limit) {
+                heap.add(key);
+            } else if (cmp.compare(key, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(key);
+            }
+        }
+        List<K> keys = new ArrayList<>(heap);
+        keys.sort(cmp);
+        return keys;
+    }
+
+    /**
+     * 由多取一条的查询结果生成一页 (rows 最多 size + 1 条，多出的一条用来判断是否还有下一页/上一页)
+     * 向前翻页时 rows 为升序，这里反转回列表顺序
+     */
+    static <T> KeysetPage<T> of(List<T> rows, int size, KeysetCursor cursor, Function<T, String> key) {
+        boolean backward = cursor != null && cursor.backward;
+        boolean more = rows.size() > size;
+        List<T> items = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (backward) Collections.reverse(items);
+
+        KeysetPage<T> page = new KeysetPage<>();
+        page.setItems(items);
+        // 向后翻页时多出的一条说明后面还有；向前翻页说明前面还有，后面必然有 (来自那里)
+        boolean hasNext = backward || more;
+        boolean hasPrev = backward ? more : cursor != null;
+        if (items.isEmpty()) {
+            // 边界之后的行已被删除：只能回到上一页
+            if (cursor != null) page.setPrevCursor(KeysetCursor.prev(cursor.key));
+            return page;
+        }
+        if (hasNext) page.setNextCursor(KeysetCursor.next(key.apply(items.get(items.size() - 1))));
+        if (hasPrev) page.setPrevCursor(KeysetCursor.prev(key.apply(items.get(0))));
+        return page;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.bloodsystem.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 档案页的一条配型记录 (只含页面显示的列)
+ * 由 MatchRecordRepository 的构造器表达式直接生成，不加载 MatchRecord 及两端的实体
+ * counterpart 为对方：供者档案中是患者，患者档案中是供者
+ */
+@Data
+@AllArgsConstructor
+public class MatchHistoryItem {
+    private Long id;
+    private LocalDateTime matchDate;
+    private Double score;
+    private String grade;
+    private String status;
+    private String counterpartId;
+    private String counterpartName;
+}
@@ -0,0 +1,115 @@
+package com.example.bloodsystem.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 配型各阶段的耗时与规模指标
+ * 阶段：candidates (位图求候选与分档)、scoring (打分)、sort (Top-K 排序)、
+ *      materialize (生成结果明细)、hydrate (回表加载供者)
+ * 打点只在排名未命中缓存时发生，命中率见 match.cache.* 指标
+ * 当前线程有 MatchTrace 时同时写入其中
+ */
+@Component
+public class MatchMetrics {
+
+    @Autowired private MeterRegistry registry;
+    @Autowired private MatchResultCache resultCache;
+
+    private Timer candidates, scoring, sort, materialize, hydrate;
+    private DistributionSummary candidateCount, resultCount;
+
+    @PostConstruct
+    void register() {
+        candidates = stage("candidates");
+        scoring = stage("scoring");
+        sort = stage("sort");
+        materialize = stage("materialize");
+        hydrate = stage("hydrate");
+        candidateCount = DistributionSummary.builder("match.candidates")
+                .description("单次配型进入打分的候选供者数")
+                .register(registry);
+        resultCount = DistributionSummary.builder("match.results")
+                .description("单次配型返回的结果条数")
+                .register(registry);
+
+        cacheCounter("match.cache.hits", "hits");
+        cacheCounter("match.cache.misses", "misses");
+        cacheCounter("match.cache.evictions", "evictions");
+        Gauge.builder("match.cache.entries", resultCache, cacheStat("entries")).register(registry);
+        Gauge.builder("match.cache.ranking.entries", resultCache, cacheStat("totalEntries")).register(registry);
+    }
+
+    void candidates(long nanos, int donors, int afterBloodType, int afterAntibodies) {
+        candidates.record(nanos, TimeUnit.NANOSECONDS);
+        candidateCount.record(afterBloodType);
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) {
+            trace.candidatesNanos += nanos;
+            trace.donors = donors;
+            trace.afterBloodType = afterBloodType;
+            trace.afterAntibodies = afterAntibodies;
+        }
+    }
+
+    void scoring(long nanos, long scored) {
+        scoring.record(nanos, TimeUnit.NANOSECONDS);
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) {
+            trace.scoringNanos += nanos;
+            trace.scored = scored;
+        }
+    }
+
+    void sort(long nanos) {
+        sort.record(nanos, TimeUnit.NANOSECONDS);
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) trace.sortNanos += nanos;
+    }
+
+    void materialize(long nanos) {
+        materialize.record(nanos, TimeUnit.NANOSECONDS);
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) trace.materializeNanos += nanos;
+    }
+
+    void hydrate(long nanos, int results) {
+        hydrate.record(nanos, TimeUnit.NANOSECONDS);
+        resultCount.record(results);
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) {
+            trace.hydrateNanos += nanos;
+            trace.results = results;
+        }
+    }
+
+    // 记下本次配型的条件，以及排名是否直接取自结果缓存
+    void ranked(MatchQuery query, boolean cacheHit) {
+        MatchTrace trace = MatchTrace.current();
+        if (trace != null) {
+            trace.query = query;
+            trace.cacheHit = cacheHit;
+        }
+    }
+
+    private Timer stage(String name) {
+        return Timer.builder("match.stage").tag("stage", name).register(registry);
+    }
+
+    private void cacheCounter(String name, String key) {
+        FunctionCounter.builder(name, resultCache, cacheStat(key)).register(registry);
+    }
+
+    private static ToDoubleFunction<MatchResultCache> cacheStat(String key) {
+        return c -> ((Number) c.stats().get(key)).doubleValue();
+    }
+}
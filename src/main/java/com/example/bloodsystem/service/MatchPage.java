@@ -0,0 +1,20 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 配型结果的一页
+ * nextCursor 为 null 表示已到最后一页；
+ * truncated 为 true 表示结果过多未保存快照，只返回了第一页且不能翻页，应缩小检索条件
+ */
+@Data
+public class MatchPage {
+    private List<MatchResult> results;
+    private String nextCursor;
+    private int offset;
+    private int total;
+    private boolean truncated;
+}
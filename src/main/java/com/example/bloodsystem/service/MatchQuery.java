@@ -0,0 +1,154 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.ScoringKernel;
+import com.example.bloodsystem.util.HlaUtils;
+import com.example.bloodsystem.util.HlaUtils.HlaInfo;
+import com.example.bloodsystem.util.HpaCodec;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 解析后的配型条件
+ * 请求参数只在这里解析一次，打分循环直接使用其中的原始类型字段。
+ */
+public class MatchQuery {
+
+    final String bloodType;
+    final HlaInfo a1, a2, b1, b2;
+    final int[] bannedGroups;
+    final RoaringBitmap bannedSet;
+    final boolean limitResult;
+    // 本次配型使用的打分内核 (期间内核被替换也不受影响)
+    final ScoringKernel kernel;
+
+    // 已填写的 HPA 位点 (按 MatchConfig 中的顺序)
+    final String[] hpaLoci;
+    final int[] hpaSlots;      // 在 HpaCodec.LOCI 中的位置
+    final byte[] hpaCodes;     // 患者基因型编码
+
+    private MatchQuery(String bloodType, HlaInfo a1, HlaInfo a2, HlaInfo b1, HlaInfo b2,
+                       int[] bannedGroups, boolean limitResult, ScoringKernel kernel,
+                       String[] hpaLoci, String[] hpaValues) {
+        this.bloodType = bloodType;
+        this.a1 = a1;
+        this.a2 = a2;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.bannedGroups = bannedGroups;
+        this.bannedSet = RoaringBitmap.bitmapOf(bannedGroups);
+        this.limitResult = limitResult;
+        this.kernel = kernel;
+        this.hpaLoci = hpaLoci;
+        this.hpaSlots = new int[hpaLoci.length];
+        this.hpaCodes = new byte[hpaLoci.length];
+        for (int i = 0; i < hpaLoci.length; i++) {
+            hpaSlots[i] = HpaCodec.locusIndex(hpaLoci[i]);
+            hpaCodes[i] = HpaCodec.encode(hpaValues[i]);
+        }
+    }
+
+    public static MatchQuery parse(String bloodType, Map<String, String> pGts, String antibodyText,
+                                   boolean limitResult, MatchConfig matchConfig) {
+        Map<String, String> gts = pGts != null ? pGts : Map.of();
+
+        List<String> loci = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String locus : matchConfig.getAllHpas()) {
+            String v = gts.get(locus);
+            if (v == null || v.isEmpty()) continue;
+            loci.add(locus);
+            values.add(v);
+        }
+
+        return new MatchQuery(
+                bloodType != null && !bloodType.isEmpty() ? bloodType : null,
+                HlaUtils.parseHla(gts.get("HLA-A1")),
+                HlaUtils.parseHla(gts.get("HLA-A2")),
+                HlaUtils.parseHla(gts.get("HLA-B1")),
+                HlaUtils.parseHla(gts.get("HLA-B2")),
+                HlaUtils.parseAntibodyGroups(antibodyText),
+                limitResult,
+                matchConfig.getKernel(),
+                loci.toArray(new String[0]),
+                values.toArray(new String[0]));
+    }
+
+    public boolean isLimitResult() { return limitResult; }
+
+    /**
+     * 归一化后的条件相同即视为同一查询 (用作结果缓存的键)
+     * 血型不区分大小写，HLA 只比较 Group，排斥抗原已去重排序，HPA 比较位点与基因型编码。
+     * 打分内核不参与比较，由缓存记录的内核代数单独校验。
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MatchQuery)) return false;
+        MatchQuery q = (MatchQuery) o;
+        return limitResult == q.limitResult
+                && Objects.equals(bloodTypeKey(), q.bloodTypeKey())
+                && group(a1) == group(q.a1) && group(a2) == group(q.a2)
+                && group(b1) == group(q.b1) && group(b2) == group(q.b2)
+                && Arrays.equals(bannedGroups, q.bannedGroups)
+                && Arrays.equals(hpaSlots, q.hpaSlots)
+                && Arrays.equals(hpaCodes, q.hpaCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Objects.hash(limitResult, bloodTypeKey(), group(a1), group(a2), group(b1), group(b2));
+        h = 31 * h + Arrays.hashCode(bannedGroups);
+        h = 31 * h + Arrays.hashCode(hpaSlots);
+        return 31 * h + Arrays.hashCode(hpaCodes);
+    }
+
+    /**
+     * 归一化后的条件 (与 equals 比较的内容一致)，用于慢配型日志复现
+     * 只含血型、HLA Group、排斥抗原 Group 与 HPA 基因型，不含患者身份信息与原始输入文本
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> hla = new LinkedHashMap<>();
+        hla.put("A1", group(a1));
+        hla.put("A2", group(a2));
+        hla.put("B1", group(b1));
+        hla.put("B2", group(b2));
+        Map<String, String> hpa = new LinkedHashMap<>();
+        for (int i = 0; i < hpaSlots.length; i++) {
+            String v = HpaCodec.decode(hpaCodes[i]);
+            hpa.put(hpaLoci[i], v != null ? v : "other");
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("bloodType", bloodTypeKey());
+        m.put("hlaGroups", hla);
+        m.put("bannedGroups", bannedGroups);
+        m.put("hpa", hpa);
+        m.put("limitResult", limitResult);
+        return m;
+    }
+
+    /**
+     * 归一化条件的文本形式 (与 equals 比较的内容一致)，用于生成 ETag
+     */
+    String key() {
+        return bloodTypeKey() + "|" + group(a1) + "," + group(a2) + "," + group(b1) + "," + group(b2)
+                + "|" + Arrays.toString(bannedGroups) + "|" + Arrays.toString(hpaSlots)
+                + "|" + Arrays.toString(hpaCodes) + "|" + limitResult;
+    }
+
+    private String bloodTypeKey() {
+        return bloodType != null ? bloodType.trim().toUpperCase(Locale.ROOT) : null;
+    }
+
+    private static int group(HlaInfo info) {
+        return info != null ? info.group : DonorIndex.NONE;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bloodsystem.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 配型排名缓存
+ * 键为归一化后的配型条件 (MatchQuery.equals)，值为排名 (序号、供者 ID、分数)。
+ * 每条缓存记录生成时的索引版本与打分内核代数，供者有任何写入 (保存/删除/清空/导入)
+ * 都会使索引版本递增，旧记录随即作废，不会返回过期结果。
+ */
+@Component
+public class MatchResultCache {
+
+    @Value("${match.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // 所有缓存排名的条数之和上限
+    @Value("${match.cache.max-total-entries:2000000}")
+    private long maxTotalEntries;
+
+    @Value("${match.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private static class Entry {
+        final Ranking ranking;
+        final long version;
+        final long generation;
+        final long createdAt;
+
+        Entry(Ranking ranking, long version, long generation) {
+            this.ranking = ranking;
+            this.version = version;
+            this.generation = generation;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    // access-order 为 true：遍历顺序即最久未使用在前
+    private final LinkedHashMap<MatchQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalEntries = 0;
+    private long latestVersion = -1;
+
+    private long hits, misses, evictions;
+
+    /**
+     * 需在 donorIndex.read() 内调用，保证 version 与排名对应
+     */
+    synchronized Ranking get(MatchQuery query, long version) {
+        Entry e = entries.get(query);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        boolean expired = System.currentTimeMillis() - e.createdAt > ttlSeconds * 1000;
+        if (expired || e.version != version || e.generation != query.kernel.generation()) {
+            remove(query, e);
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.ranking;
+    }
+
+    synchronized void put(MatchQuery query, long version, Ranking ranking) {
+        if (ranking.size() > maxTotalEntries) return;
+        // 索引版本前进后，旧版本的记录永远不会再命中，直接清掉
+        if (version > latestVersion) {
+            if (!entries.isEmpty()) {
+                evictions += entries.size();
+                entries.clear();
+                totalEntries = 0;
+            }
+            latestVersion = version;
+        } else if (version < latestVersion) {
+            return;
+        }
+
+        Entry old = entries.put(query, new Entry(ranking, version, query.kernel.generation()));
+        if (old != null) totalEntries -= old.ranking.size();
+        totalEntries += ranking.size();
+
+        Iterator<Map.Entry<MatchQuery, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalEntries > maxTotalEntries) && it.hasNext()) {
+            Entry oldest = it.next().getValue();
+            totalEntries -= oldest.ranking.size();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        evictions += entries.size();
+        entries.clear();
+        totalEntries = 0;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("totalEntries", totalEntries);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("evictions", evictions);
+        long lookups = hits + misses;
+        m.put("hitRate", lookups > 0 ? (double) hits / lookups : 0.0);
+        return m;
+    }
+
+    private void remove(MatchQuery query, Entry e) {
+        entries.remove(query);
+        totalEntries -= e.ranking.size();
+        evictions++;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bloodsystem.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * 配型并行打分
+ * 使用独立的、线程数固定的 ForkJoinPool (不占用公共池)，
+ * 候选集合按序号区间切块，每块各自维护 Top-K，最后逐级合并。
+ * 排名规则是全序 (分数 + 供者 ID)，因此合并结果与串行完全一致。
+ */
+@Component
+public class MatchScoringPool {
+
+    // 0 表示使用 CPU 核数
+    @Value("${match.parallel.threads:0}")
+    private int threads;
+
+    // 单个候选集合达到该数量才走并行
+    @Value("${match.parallel.threshold:20000}")
+    private int threshold;
+
+    // 每个子任务最多处理的候选数
+    @Value("${match.parallel.chunk-size:4096}")
+    private int chunkSize;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void start() {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("match-scoring-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    boolean shouldParallelize(RoaringBitmap candidates) {
+        return pool.getParallelism() > 1 && candidates.getLongCardinality() >= threshold;
+    }
+
+    /**
+     * 并行打分，返回未 finish 的 Top-K (由调用方合并)
+     * 调用方需持有 DonorIndex 读锁，工作线程在此期间读取索引列
+     */
+    TopK score(RoaringBitmap candidates, int limit, TopK.TieBreaker ties, IntToDoubleFunction scorer) {
+        return scoreBatch(candidates,
+                () -> new TopK[]{new TopK(limit, ties)},
+                (ord, tops) -> tops[0].offer(ord, scorer.applyAsDouble(ord)))[0];
+    }
+
+    /**
+     * 批量打分：每个候选供者交给 scorer，由它写入各患者自己的 Top-K
+     * 每个子任务用 factory 创建一组 Top-K，合并时按下标逐个合并
+     */
+    TopK[] scoreBatch(RoaringBitmap candidates, Supplier<TopK[]> factory, BatchScorer scorer) {
+        if (candidates.isEmpty()) return factory.get();
+        long end = Integer.toUnsignedLong(candidates.last()) + 1;
+        return pool.invoke(new ScoreTask(candidates, candidates.first(), end, factory, scorer));
+    }
+
+    interface BatchScorer {
+        void score(int ord, TopK[] tops);
+    }
+
+    private class ScoreTask extends RecursiveTask<TopK[]> {
+        private final RoaringBitmap candidates;
+        private final long from, to;
+        private final Supplier<TopK[]> factory;
+        private final BatchScorer scorer;
+
+        ScoreTask(RoaringBitmap candidates, long from, long to, Supplier<TopK[]> factory, BatchScorer scorer) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.factory = factory;
+            this.scorer = scorer;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (to - from > 1 && candidates.rangeCardinality(from, to) > chunkSize) {
+                long mid = (from + to) >>> 1;
+                ScoreTask left = new ScoreTask(candidates, from, mid, factory, scorer);
+                ScoreTask right = new ScoreTask(candidates, mid, to, factory, scorer);
+                right.fork();
+                TopK[] result = left.compute();
+                TopK[] other = right.join();
+                for (int i = 0; i < result.length; i++) result[i].merge(other[i]);
+                return result;
+            }
+
+            TopK[] tops = factory.get();
+            PeekableIntIterator it = candidates.getIntIterator();
+            it.advanceIfNeeded((int) from);
+            while (it.hasNext() && it.peekNext() < to) {
+                scorer.score(it.next(), tops);
+            }
+            return tops;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bloodsystem.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 慢配型日志：总耗时超过阈值的请求，把归一化条件与阶段耗时写成一行 JSON
+ * 输出到独立的滚动日志 (见 logback-spring.xml 中的 match.slow)，可直接用于复现与基准测试
+ */
+@Component
+public class MatchSlowLog {
+
+    private static final Logger log = LoggerFactory.getLogger("match.slow");
+
+    // 0 或负数表示关闭
+    @Value("${match.slow-log.threshold-ms:1000}")
+    private long thresholdMs;
+
+    @Autowired private ObjectMapper objectMapper;
+
+    public void record(MatchTrace trace) {
+        if (thresholdMs <= 0 || trace.totalMillis() < thresholdMs || trace.query == null) return;
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("query", trace.query.describe());
+        entry.put("explain", trace.toMap());
+        try {
+            log.info(objectMapper.writeValueAsString(entry));
+        } catch (JsonProcessingException e) {
+            log.warn("慢配型记录序列化失败: {}", e.getMessage());
+        }
+    }
+}
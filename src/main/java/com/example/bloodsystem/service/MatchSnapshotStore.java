@@ -0,0 +1,85 @@
+package com.example.bloodsystem.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 配型结果快照 (分页游标使用)
+ * 只保存排名 (序号、供者 ID、分数) 与解析后的条件，翻页时按页生成明细。
+ * 超过有效期或总条数上限时按最久未使用淘汰。
+ */
+@Component
+public class MatchSnapshotStore {
+
+    @Value("${match.snapshot.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    // 所有快照的排名条数之和上限 (每条约 20 字节)
+    @Value("${match.snapshot.max-total-entries:5000000}")
+    private long maxTotalEntries;
+
+    static class Snapshot {
+        final String id;
+        final Ranking ranking;
+        final MatchQuery query;
+        volatile long lastAccess;
+
+        Snapshot(String id, Ranking ranking, MatchQuery query) {
+            this.id = id;
+            this.ranking = ranking;
+            this.query = query;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    // access-order 为 true：遍历顺序即最久未使用在前
+    private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalEntries = 0;
+
+    /**
+     * 单个排名就超过总条数上限时不保存，返回 null (由调用方改为不分页返回)
+     */
+    synchronized Snapshot put(Ranking ranking, MatchQuery query) {
+        if (ranking.size() > maxTotalEntries) return null;
+        evictExpired();
+        Snapshot s = new Snapshot(UUID.randomUUID().toString().replace("-", ""), ranking, query);
+        snapshots.put(s.id, s);
+        totalEntries += ranking.size();
+
+        Iterator<Map.Entry<String, Snapshot>> it = snapshots.entrySet().iterator();
+        while (totalEntries > maxTotalEntries && it.hasNext()) {
+            Snapshot oldest = it.next().getValue();
+            if (oldest == s) break;
+            totalEntries -= oldest.ranking.size();
+            it.remove();
+        }
+        return s;
+    }
+
+    /**
+     * 已过期或被淘汰时返回 null
+     */
+    synchronized Snapshot get(String id) {
+        evictExpired();
+        Snapshot s = snapshots.get(id);
+        if (s != null) s.lastAccess = System.currentTimeMillis();
+        return s;
+    }
+
+    private void evictExpired() {
+        long deadline = System.currentTimeMillis() - ttlSeconds * 1000;
+        Iterator<Map.Entry<String, Snapshot>> it = snapshots.entrySet().iterator();
+        while (it.hasNext()) {
+            Snapshot s = it.next().getValue();
+            // 按访问顺序排列，遇到第一个未过期的即可停止
+            if (s.lastAccess >= deadline) break;
+            totalEntries -= s.ranking.size();
+            it.remove();
+        }
+    }
+}
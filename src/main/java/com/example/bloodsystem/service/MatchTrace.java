@@ -0,0 +1,87 @@
+package com.example.bloodsystem.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单次配型请求的阶段耗时与候选数 (explain 输出与慢配型日志使用)
+ * 绑定在请求线程上，由 MatchMetrics 在记录指标时顺带填写；未开启时各处打点不受影响。
+ * 并行打分的耗时在调用线程上统计，工作线程无需访问。
+ */
+public class MatchTrace {
+
+    private static final ThreadLocal<MatchTrace> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    MatchQuery query;
+    boolean cacheHit;
+
+    long candidatesNanos, scoringNanos, sortNanos, materializeNanos, hydrateNanos, serializationNanos;
+    long totalNanos;
+
+    int donors;             // 索引中的供者总数
+    int afterBloodType;     // 血型筛选之后
+    int afterAntibodies;    // 排除排斥抗原冲突之后
+    long scored;            // 实际打分的供者数 (分档剪枝后可能少于候选数)
+    int results;
+    int responseBytes;
+
+    public static MatchTrace start() {
+        MatchTrace trace = new MatchTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static MatchTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 结束跟踪：记录总耗时并与当前线程解绑
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+        CURRENT.remove();
+    }
+
+    public void serialized(long nanos, int bytes) {
+        serializationNanos = nanos;
+        responseBytes = bytes;
+    }
+
+    public long totalMillis() {
+        return totalNanos / 1_000_000;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        // 候选筛选在内存索引上完成，SQL 只用于回表加载返回的供者 (hydrate)
+        stages.put("candidates", millis(candidatesNanos));
+        stages.put("scoring", millis(scoringNanos));
+        stages.put("sort", millis(sortNanos));
+        stages.put("materialize", millis(materializeNanos));
+        stages.put("hydrate", millis(hydrateNanos));
+        stages.put("serialization", millis(serializationNanos));
+
+        Map<String, Object> counts = new LinkedHashMap<>();
+        if (!cacheHit) {
+            counts.put("donors", donors);
+            counts.put("afterBloodType", afterBloodType);
+            counts.put("afterAntibodies", afterAntibodies);
+            counts.put("scored", scored);
+        }
+        counts.put("results", results);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("totalMs", millis(totalNanos));
+        m.put("cacheHit", cacheHit);
+        m.put("stagesMs", stages);
+        m.put("candidates", counts);
+        m.put("responseBytes", responseBytes);
+        return m;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bloodsystem.service;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 子串检索用的 n-gram 倒排索引 (单字 + 相邻两字)
+ * 与 LIKE '%关键词%' 语义一致 (不区分大小写)：
+ * 各 n-gram 的位图求交得到候选，再逐个确认文本确实包含关键词。
+ * 两字 n-gram 对中文姓名 (多为 2~3 字) 也有效；单字关键词直接取单字位图。
+ * 序号由调用方分配；本身不加锁，由所属索引的锁保护。
+ */
+class NgramIndex {
+
+    // 多个字段拼在一起时的分隔符，不参与 n-gram
+    private static final char SEP = '\u0000';
+
+    private final Map<Integer, RoaringBitmap> postings = new HashMap<>();
+    private String[] texts = new String[1024];
+
+    /**
+     * 设置某个序号的文本 (覆盖原有内容)；null 字段忽略
+     */
+    void put(int ord, String... fields) {
+        remove(ord);
+        StringBuilder sb = new StringBuilder();
+        for (String f : fields) {
+            if (f == null || f.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(SEP);
+            sb.append(f.toLowerCase(Locale.ROOT));
+        }
+        if (ord >= texts.length) texts = Arrays.copyOf(texts, Math.max(ord + 1, texts.length * 2));
+        String text = sb.toString();
+        texts[ord] = text;
+        for (int key : grams(text)) postings.computeIfAbsent(key, k -> new RoaringBitmap()).add(ord);
+    }
+
+    void remove(int ord) {
+        if (ord >= texts.length || texts[ord] == null) return;
+        for (int key : grams(texts[ord])) {
+            RoaringBitmap bm = postings.get(key);
+            if (bm == null) continue;
+            bm.remove(ord);
+            if (bm.isEmpty()) postings.remove(key);
+        }
+        texts[ord] = null;
+    }
+
+    void clear() {
+        postings.clear();
+        Arrays.fill(texts, null);
+    }
+
+    /**
+     * 文本包含 keyword 的序号 (返回新位图)；keyword 为空时返回空集
+     */
+    RoaringBitmap search(String keyword) {
+        if (keyword == null || keyword.isEmpty()) return new RoaringBitmap();
+        String kw = keyword.toLowerCase(Locale.ROOT);
+        if (kw.indexOf(SEP) >= 0) return new RoaringBitmap();
+
+        RoaringBitmap candidates = null;
+        for (int key : grams(kw)) {
+            // 两字关键词只有一个两字 n-gram，单字位图无需再求交
+            if (kw.length() > 1 && key >>> 16 == 0) continue;
+            RoaringBitmap bm = postings.get(key);
+            if (bm == null) return new RoaringBitmap();
+            candidates = candidates == null ? bm.clone() : RoaringBitmap.and(candidates, bm);
+            if (candidates.isEmpty()) return candidates;
+        }
+        if (candidates == null) return new RoaringBitmap();
+        // 单字与两字关键词的候选即结果；更长的需确认 n-gram 确实连续出现
+        if (kw.length() <= 2) return candidates;
+
+        RoaringBitmap hits = new RoaringBitmap();
+        for (IntIterator it = candidates.getIntIterator(); it.hasNext(); ) {
+            int ord = it.next();
+            if (texts[ord].contains(kw)) hits.add(ord);
+        }
+        return hits;
+    }
+
+    // 单字键为字符本身 (高 16 位为 0)，两字键为 (前一字 << 16 | 后一字)，跨分隔符的两字不计
+    private static Set<Integer> grams(String text) {
+        Set<Integer> keys = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == SEP) continue;
+            keys.add((int) c);
+            if (i + 1 < text.length() && text.charAt(i + 1) != SEP) keys.add(c << 16 | text.charAt(i + 1));
+        }
+        return keys;
+    }
+}
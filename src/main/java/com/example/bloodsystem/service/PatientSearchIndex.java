@@ -0,0 +1,217 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Patient;
+import com.example.bloodsystem.util.TransactionUtils;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 患者列表搜索索引 (ID + 姓名的 n-gram)
+ * 本节点的写入在事务提交后同步；其他节点的写入靠定期重建 (search.patients.refresh-ms) 补上。
+ * 首次使用时加载。重建期间本节点写入的患者记入 pending，替换前在新索引上按数据库当前状态再刷新一次。
+ */
+@Component
+public class PatientSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientSearchIndex.class);
+
+    // 与列表顺序一致：建档时间倒序 (空值在最后)，同一时间按 ID 倒序
+    private static final Comparator<Entry> LIST_ORDER = Comparator
+            .comparing((Entry e) -> e.createdAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(e -> e.patientId)
+            .reversed();
+
+    private static final String SELECT_SQL = "SELECT patient_id, name, created_at FROM patients";
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Data data;
+    // 重建期间本节点写入过的患者 (与 data 的替换一起由 this 锁保护)
+    private Set<String> pending;
+
+    private static class Entry {
+        final String patientId;
+        final LocalDateTime createdAt;
+
+        Entry(String patientId, LocalDateTime createdAt) {
+            this.patientId = patientId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // 一份完整的索引；重建时整份替换
+    private static class Data {
+        final Map<String, Integer> ordinals = new HashMap<>();
+        final NgramIndex keywords = new NgramIndex();
+        Entry[] entries = new Entry[1024];
+        final Deque<Integer> freeSlots = new ArrayDeque<>();
+        int size = 0;
+
+        void put(String patientId, String name, LocalDateTime createdAt) {
+            Integer ord = ordinals.get(patientId);
+            if (ord == null) {
+                ord = !freeSlots.isEmpty() ? freeSlots.pop() : size++;
+                if (ord >= entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+                ordinals.put(patientId, ord);
+            }
+            entries[ord] = new Entry(patientId, createdAt);
+            keywords.put(ord, patientId, name);
+        }
+
+        void remove(String patientId) {
+            Integer ord = ordinals.remove(patientId);
+            if (ord == null) return;
+            keywords.remove(ord);
+            entries[ord] = null;
+            freeSlots.push(ord);
+        }
+    }
+
+    /**
+     * 一页搜索结果：按列表顺序定位后的患者 ID (向前翻页时为逆序) 与命中总数
+     */
+    static class Hits {
+        final List<String> patientIds;
+        final long total;
+
+        Hits(List<String> patientIds, long total) {
+            this.patientIds = patientIds;
+            this.total = total;
+        }
+    }
+
+    /**
+     * ID 或姓名包含 keyword 的患者中，紧邻边界 (createdAt, patientId) 的 limit 个
+     * 边界为 null 时从第一条开始
+     */
+    Hits search(String keyword, LocalDateTime createdAt, String patientId, boolean backward, int limit) {
+        Data d = ensureLoaded();
+        lock.readLock().lock();
+        try {
+            RoaringBitmap hits = d.keywords.search(keyword);
+            Entry bound = patientId != null ? new Entry(patientId, createdAt) : null;
+            List<Entry> window = KeysetPage.seek(hits.getIntIterator(), ord -> d.entries[ord], LIST_ORDER,
+                    bound, backward, limit);
+            List<String> ids = new ArrayList<>(window.size());
+            window.forEach(e -> ids.add(e.patientId));
+            return new Hits(ids, hits.getLongCardinality());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long count() {
+        Data d = ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return d.ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- 同步本节点的写入 (事务提交后) ---
+
+    public void upsertAfterCommit(Patient p) {
+        String id = p.getPatientId(), name = p.getName();
+        LocalDateTime createdAt = p.getCreatedAt();
+        TransactionUtils.afterCommit(() -> write(List.of(id), d -> d.put(id, name, createdAt)));
+    }
+
+    public void removeAfterCommit(String patientId) {
+        TransactionUtils.afterCommit(() -> write(List.of(patientId), d -> d.remove(patientId)));
+    }
+
+    public void removeAfterCommit(Collection<String> patientIds) {
+        List<String> copy = List.copyOf(patientIds);
+        TransactionUtils.afterCommit(() -> write(copy, d -> copy.forEach(d::remove)));
+    }
+
+    // 首次加载持有 this 锁，这里会等它完成后再写入，不会漏掉加载期间提交的患者
+    private synchronized void write(Collection<String> patientIds, Consumer<Data> action) {
+        // 尚未加载时无需维护，首次使用时会从数据库完整加载
+        if (data == null) return;
+        if (pending != null) pending.addAll(patientIds);
+        lock.writeLock().lock();
+        try {
+            action.accept(data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // --- 加载与定期重建 ---
+
+    @Scheduled(fixedDelayString = "${search.patients.refresh-ms:300000}",
+            initialDelayString = "${search.patients.refresh-ms:300000}")
+    public void refresh() {
+        synchronized (this) {
+            if (data == null) return;
+            pending = new HashSet<>();
+        }
+        try {
+            // 加载不持锁，期间的写入照常进行并记入 pending
+            Data fresh = load();
+            synchronized (this) {
+                if (!pending.isEmpty()) reloadRows(fresh, pending);
+                lock.writeLock().lock();
+                try {
+                    data = fresh;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("重建患者搜索索引失败: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    private Data ensureLoaded() {
+        Data d = data;
+        if (d != null) return d;
+        synchronized (this) {
+            if (data == null) data = load();
+            return data;
+        }
+    }
+
+    private Data load() {
+        Data d = new Data();
+        jdbcTemplate.query(SELECT_SQL, rs -> { put(d, rs); });
+        return d;
+    }
+
+    // 按数据库当前状态刷新这些患者 (已删除的移除)
+    private void reloadRows(Data d, Collection<String> patientIds) {
+        List<String> ids = new ArrayList<>(patientIds);
+        for (int from = 0; from < ids.size(); from += 1000) {
+            List<String> chunk = ids.subList(from, Math.min(from + 1000, ids.size()));
+            chunk.forEach(d::remove);
+            String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query(SELECT_SQL + " WHERE patient_id IN (" + in + ")", rs -> { put(d, rs); }, chunk.toArray());
+        }
+    }
+
+    private static void put(Data d, ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp(3);
+        d.put(rs.getString(1), rs.getString(2), ts != null ? ts.toLocalDateTime() : null);
+    }
+}
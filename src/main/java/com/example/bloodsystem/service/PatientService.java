@@ -6,68 +6,170 @@ import com.example.bloodsystem.entity.Patient;
 import com.example.bloodsystem.repository.DonorRepository;
 import com.example.bloodsystem.repository.MatchRecordRepository;
 import com.example.bloodsystem.repository.PatientRepository;
+import com.example.bloodsystem.util.HpaCodec;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 @Service
 public class PatientService {
 
+    private static final Logger log = LoggerFactory.getLogger(PatientService.class);
+
+    // 回填时既没有建档时间也没有修改时间的患者使用的建档时间 (排在列表最后)
+    private static final LocalDateTime LEGACY_CREATED_AT = LocalDateTime.of(2000, 1, 1, 0, 0);
+
     @Autowired private PatientRepository patientRepository;
     @Autowired private MatchRecordRepository matchRecordRepository;
     @Autowired private DonorRepository donorRepository;
+    @Autowired private PatientSearchIndex patientSearch;
+    @Autowired private DonorUsageStats donorUsage;
+
+    /**
+     * 早期数据的建档时间可能为空，键集分页的条件比较不到这些行 (永远翻不到)；启动时回填
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillCreatedAt() {
+        int rows = patientRepository.backfillCreatedAt(LEGACY_CREATED_AT);
+        if (rows > 0) log.info("已回填 {} 名患者的建档时间", rows);
+    }
+
+    /**
+     * 患者列表 (键集分页，按建档时间倒序，同一时间按 ID 倒序)
+     * cursor 为空取第一页，游标格式错误时抛出 IllegalArgumentException
+     * 有搜索词时走内存中的 n-gram 索引；withTotal 时附带总数 (索引中的人数或命中数)
+     */
+    public KeysetPage<Patient> getPatients(String cursor, int size, String keyword, boolean withTotal) {
+        KeysetCursor c = KeysetCursor.parse(cursor);
+        String kw = keyword != null && !keyword.trim().isEmpty() ? keyword.trim() : null;
+        int n = Math.max(1, Math.min(size, DonorService.MAX_LIST_SIZE));
+        boolean backward = c != null && c.backward;
+
+        LocalDateTime createdAt = null;
+        String id = null;
+        if (c != null) {
+            int sep = c.key.indexOf('|');
+            try {
+                createdAt = LocalDateTime.parse(c.key.substring(0, Math.max(sep, 0)));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            id = c.key.substring(sep + 1);
+        }
 
-    public Page<Patient> getPatients(int page, int size, String keyword) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        if (keyword != null && !keyword.trim().isEmpty()) {
-            return patientRepository.search(keyword.trim(), pageable);
+        List<Patient> rows;
+        long total;
+        if (kw != null) {
+            PatientSearchIndex.Hits hits = patientSearch.search(kw, createdAt, id, backward, n + 1);
+            Map<String, Patient> found = new HashMap<>();
+            patientRepository.findAllById(hits.patientIds).forEach(p -> found.put(p.getPatientId(), p));
+            rows = new ArrayList<>(hits.patientIds.size());
+            for (String pid : hits.patientIds) {
+                Patient p = found.get(pid);
+                if (p != null) rows.add(p);
+            }
+            total = hits.total;
+        } else {
+            Pageable limit = PageRequest.of(0, n + 1);
+            if (c == null) rows = patientRepository.findFirstPage(limit);
+            else if (backward) rows = patientRepository.findPageBefore(createdAt, id, limit);
+            else rows = patientRepository.findPageAfter(createdAt, id, limit);
+            total = withTotal ? patientSearch.count() : 0;
         }
-        return patientRepository.findAll(pageable);
+        // 前面已不足一页：直接回到第一页
+        if (backward && rows.size() <= n) return getPatients(null, n, kw, withTotal);
+
+        KeysetPage<Patient> page = KeysetPage.of(rows, n, c, p -> p.getCreatedAt() + "|" + p.getPatientId());
+        if (withTotal) page.setTotal(total);
+        return page;
     }
 
     public Patient getPatientById(String id) {
         return patientRepository.findById(id).orElse(null);
     }
 
-    public List<MatchRecord> getHistoryByPatient(String patientId) {
-        return matchRecordRepository.findByPatientPatientIdOrderByMatchDateDesc(patientId);
+    public static final int HISTORY_PAGE_SIZE = 20;
+
+    /**
+     * 供者档案页的配型历史 (键集分页，按 matchDate、id 倒序)；游标格式错误时抛出 IllegalArgumentException
+     * 每页固定一条查询，与历史条数无关
+     */
+    public KeysetPage<MatchHistoryItem> getDonorHistory(String donorId, String cursor, int size) {
+        return getHistory(cursor, size,
+                limit -> matchRecordRepository.findDonorHistory(donorId, limit),
+                (date, id, limit) -> matchRecordRepository.findDonorHistoryAfter(donorId, date, id, limit),
+                (date, id, limit) -> matchRecordRepository.findDonorHistoryBefore(donorId, date, id, limit));
     }
 
-    public List<MatchRecord> getHistoryByDonor(String donorId) {
-        return matchRecordRepository.findByDonorDonorIdOrderByMatchDateDesc(donorId);
+    public KeysetPage<MatchHistoryItem> getPatientHistory(String patientId, String cursor, int size) {
+        return getHistory(cursor, size,
+                limit -> matchRecordRepository.findPatientHistory(patientId, limit),
+                (date, id, limit) -> matchRecordRepository.findPatientHistoryAfter(patientId, date, id, limit),
+                (date, id, limit) -> matchRecordRepository.findPatientHistoryBefore(patientId, date, id, limit));
     }
 
-    @Transactional
-    public void deletePatient(String patientId) {
-        try {
-            List<MatchRecord> records = matchRecordRepository.findByPatientPatientIdOrderByMatchDateDesc(patientId);
-            matchRecordRepository.deleteAll(records);
-            patientRepository.deleteById(patientId);
-        } catch (Exception e) {
-            throw new RuntimeException("删除患者失败: " + e.getMessage());
+    private interface HistorySeek {
+        List<MatchHistoryItem> find(LocalDateTime matchDate, Long id, Pageable limit);
+    }
+
+    private KeysetPage<MatchHistoryItem> getHistory(String cursor, int size,
+                                                    Function<Pageable, List<MatchHistoryItem>> first,
+                                                    HistorySeek after, HistorySeek before) {
+        KeysetCursor c = KeysetCursor.parse(cursor);
+        int n = Math.max(1, Math.min(size, DonorService.MAX_LIST_SIZE));
+        Pageable limit = PageRequest.of(0, n + 1);
+
+        List<MatchHistoryItem> rows;
+        if (c == null) {
+            rows = first.apply(limit);
+        } else {
+            int sep = c.key.indexOf('|');
+            LocalDateTime date;
+            long id;
+            try {
+                date = LocalDateTime.parse(c.key.substring(0, Math.max(sep, 0)));
+                id = Long.parseLong(c.key.substring(sep + 1));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            rows = c.backward ? before.find(date, id, limit) : after.find(date, id, limit);
+            // 前面已不足一页：直接回到第一页
+            if (c.backward && rows.size() <= n) return getHistory(null, n, first, after, before);
         }
+        return KeysetPage.of(rows, n, c, r -> r.getMatchDate() + "|" + r.getId());
     }
 
-    // 🔥 新增：清空所有患者
     @Transactional
-    public void deleteAllPatients() {
+    public void deletePatient(String patientId) {
         try {
-            // 先删除所有配型记录（因为配型记录依赖患者）
-            matchRecordRepository.deleteAllInBatch();
-            patientRepository.deleteAllInBatch();
+            List<String> donorIds = matchRecordRepository.findDonorIdsByPatientId(patientId);
+            matchRecordRepository.deleteByPatientId(patientId);
+            donorUsage.recompute(donorIds);
+            patientRepository.deleteById(patientId);
+            patientSearch.removeAfterCommit(patientId);
         } catch (Exception e) {
-            throw new RuntimeException("清空失败: " + e.getMessage());
+            throw new RuntimeException("删除患者失败: " + e.getMessage());
         }
     }
 
     @Transactional
+    @Timed(value = "patient.confirm-match", histogram = true)
     public String confirmMatch(String inputPatientId, String donorId, String patientName, Map<String, String> patientData,
                                Double score, String grade) {
 
@@ -81,6 +183,7 @@ public class PatientService {
         p.setName(patientName);
         updatePatientData(p, patientData);
         p = patientRepository.save(p);
+        patientSearch.upsertAfterCommit(p);
 
         Donor d = donorRepository.findById(donorId)
                 .orElseThrow(() -> new RuntimeException("供者ID不存在: " + donorId));
@@ -91,10 +194,29 @@ public class PatientService {
         record.setScore(score);
         record.setGrade(grade);
         matchRecordRepository.save(record);
+        donorUsage.recordSelection(donorId, record.getMatchDate());
 
         return p.getPatientId();
     }
 
+    /**
+     * 变更配型记录状态 (SELECTED / TRANSFUSED)，同时更新该供者的使用统计
+     */
+    @Transactional
+    public void updateRecordStatus(Long recordId, String status) {
+        if (!MatchRecord.SELECTED.equals(status) && !MatchRecord.TRANSFUSED.equals(status)) {
+            throw new RuntimeException("无效的状态: " + status);
+        }
+        MatchRecord record = matchRecordRepository.findById(recordId)
+                .orElseThrow(() -> new RuntimeException("配型记录不存在: " + recordId));
+        String old = record.getStatus();
+        if (status.equals(old)) return;
+        record.setStatus(status);
+        // 先写入，使用统计缺行时按配型记录重算能包含这次变更
+        matchRecordRepository.saveAndFlush(record);
+        donorUsage.recordStatusChange(record.getDonor().getDonorId(), old, status);
+    }
+
     private void updatePatientData(Patient p, Map<String, String> data) {
         if (data == null) return;
         if (data.containsKey("bloodType")) p.setBloodType(data.get("bloodType"));
@@ -114,5 +236,7 @@ public class PatientService {
         if (data.containsKey("HPA-10")) p.setHpa10(data.get("HPA-10"));
         if (data.containsKey("HPA-15")) p.setHpa15(data.get("HPA-15"));
         if (data.containsKey("HPA-21")) p.setHpa21(data.get("HPA-21"));
+
+        p.setHpaCode(HpaCodec.pack(p.getGenotypesMap()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.util.TransactionUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 后台清空供者库 / 患者库
+ * 按主键顺序每次取 purge.chunk-size 行，在一个短事务内先删引用它们的配型记录再删本身，
+ * 批次之间暂停 purge.pause-ms，避免长时间锁表影响配型与录入。
+ * 供者的每批删除都写入变更流水并在提交后从索引移除，任务中途失败时各节点的索引仍与数据库一致；
+ * 已删除的部分不会恢复，重新提交即可继续清空 (进程退出时同理)。
+ */
+@Service
+public class PurgeService {
+
+    private static final Logger log = LoggerFactory.getLogger(PurgeService.class);
+
+    public static final String DONORS = "donors";
+    public static final String PATIENTS = "patients";
+
+    // 内存中最多保留的已结束任务状态
+    private static final int MAX_FINISHED = 20;
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private DonorChangeFeed changeFeed;
+    @Autowired private DonorIndex donorIndex;
+    @Autowired private PatientSearchIndex patientSearch;
+    @Autowired private DonorUsageStats donorUsage;
+
+    @Value("${purge.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${purge.pause-ms:50}")
+    private long pauseMs;
+
+    private final Map<String, PurgeStatus> jobs = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "purge-job"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交清空任务；同一目标已有未结束的任务时直接返回该任务
+     */
+    public synchronized PurgeStatus submit(String target) {
+        if (!DONORS.equals(target) && !PATIENTS.equals(target)) {
+            throw new IllegalArgumentException("未知的清空目标: " + target);
+        }
+        PurgeStatus running = active(target);
+        if (running != null) return running;
+
+        PurgeStatus status = new PurgeStatus();
+        status.setJobId(UUID.randomUUID().toString().replace("-", "").substring(0, 10));
+        status.setTarget(target);
+        status.setStatus(PurgeStatus.QUEUED);
+        jobs.put(status.getJobId(), status);
+        executor.submit(() -> run(status));
+        evictFinished();
+        return status;
+    }
+
+    public PurgeStatus getStatus(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 该目标正在进行的清空任务，没有则返回 null
+     */
+    public PurgeStatus active(String target) {
+        for (PurgeStatus s : jobs.values()) {
+            if (s.getTarget().equals(target) && s.isActive()) return s;
+        }
+        return null;
+    }
+
+    private void run(PurgeStatus status) {
+        status.setStatus(PurgeStatus.RUNNING);
+        status.setStartedAt(System.currentTimeMillis());
+        boolean donors = DONORS.equals(status.getTarget());
+        String table = donors ? "donors" : "patients";
+        String key = donors ? "donor_id" : "patient_id";
+        try {
+            Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+            status.setTotal(total != null ? total : 0);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                int n = transactionTemplate.execute(tx -> deleteChunk(status, table, key, donors));
+                if (n == 0) break;
+                status.setChunks(status.getChunks() + 1);
+                if (pauseMs > 0) Thread.sleep(pauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("清空任务 {} ({}) 失败", status.getJobId(), table, e);
+            status.setLastError(e.getMessage());
+            status.setStatus(PurgeStatus.FAILED);
+            status.setFinishedAt(System.currentTimeMillis());
+            return;
+        }
+
+        if (Thread.currentThread().isInterrupted()) {
+            status.setLastError("进程退出，任务中止");
+            status.setStatus(PurgeStatus.FAILED);
+        } else {
+            log.info("清空任务 {} 完成: 删除 {} {} 条，配型记录 {} 条", status.getJobId(), table,
+                    status.getDeleted(), status.getDeletedRecords());
+            status.setStatus(PurgeStatus.COMPLETED);
+        }
+        status.setFinishedAt(System.currentTimeMillis());
+    }
+
+    // 一个批次 (在事务内执行)，返回本批删除的行数
+    private int deleteChunk(PurgeStatus status, String table, String key, boolean donors) {
+        List<String> ids = jdbcTemplate.queryForList(
+                "SELECT " + key + " FROM " + table + " ORDER BY " + key + " LIMIT " + chunkSize, String.class);
+        if (ids.isEmpty()) return 0;
+
+        String in = " WHERE " + key + " IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        Object[] args = ids.toArray();
+        // 删除患者的配型记录会改变相关供者的使用统计，删除前记下这些供者
+        List<String> affectedDonors = donors ? ids
+                : jdbcTemplate.queryForList("SELECT DISTINCT donor_id FROM match_records" + in, String.class, args);
+        int records = jdbcTemplate.update("DELETE FROM match_records" + in, args);
+        int rows = jdbcTemplate.update("DELETE FROM " + table + in, args);
+
+        if (donors) {
+            changeFeed.recordDeletes(ids);
+            donorIndex.removeAfterCommit(ids);
+            donorUsage.remove(ids);
+        } else {
+            patientSearch.removeAfterCommit(ids);
+            donorUsage.recompute(affectedDonors);
+        }
+        // 计数在提交后更新，回滚的批次不计入
+        TransactionUtils.afterCommit(() -> {
+            status.setDeleted(status.getDeleted() + rows);
+            status.setDeletedRecords(status.getDeletedRecords() + records);
+        });
+        return ids.size();
+    }
+
+    private void evictFinished() {
+        if (jobs.size() <= MAX_FINISHED) return;
+        jobs.values().stream()
+                .filter(s -> !s.isActive())
+                .sorted((a, b) -> Long.compare(a.getFinishedAt(), b.getFinishedAt()))
+                .limit(jobs.size() - MAX_FINISHED)
+                .forEach(s -> jobs.remove(s.getJobId()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bloodsystem.service;
+
+import lombok.Data;
+
+/**
+ * 后台清空任务的实时状态 (清空线程写入，进度接口与列表页读取)
+ */
+@Data
+public class PurgeStatus {
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private String jobId;
+    // donors / patients
+    private String target;
+    private volatile String status;
+    // 开始时的总行数 (期间新增的也会被删除，因此已删除数可能超过该值)
+    private volatile long total = 0;
+    private volatile long deleted = 0;
+    // 随之删除的配型记录数
+    private volatile long deletedRecords = 0;
+    private volatile int chunks = 0;
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+    private volatile String lastError;
+
+    public boolean isActive() {
+        return QUEUED.equals(status) || RUNNING.equals(status);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.bloodsystem.service;
+
+/**
+ * 排好序的配型结果 (第一名在前)
+ * 只包含序号、供者 ID 与分数，结果明细按需分段生成。
+ * 供者 ID 用于在分段生成时确认序号未被其他供者复用。
+ */
+class Ranking {
+
+    final int[] ordinals;
+    final String[] donorIds;
+    final double[] scores;
+
+    private Ranking(int[] ordinals, String[] donorIds, double[] scores) {
+        this.ordinals = ordinals;
+        this.donorIds = donorIds;
+        this.scores = scores;
+    }
+
+    /**
+     * 需在 donorIndex.read() 内调用
+     */
+    static Ranking of(TopK top, DonorIndex index) {
+        top.finish();
+        int n = top.size();
+        int[] ords = new int[n];
+        String[] ids = new String[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            ords[i] = top.ordinal(i);
+            ids[i] = index.donorId(ords[i]);
+            scores[i] = top.score(i);
+        }
+        return new Ranking(ords, ids, scores);
+    }
+
+    int size() { return ordinals.length; }
+}
@@ -0,0 +1,119 @@
+package com.example.bloodsystem.service;
+
+import java.util.Arrays;
+
+/**
+ * 配型排名的 Top-K 选择器
+ * 只保存 (供者序号, 分数) 两组原始类型数组，打分热路径上不产生对象。
+ * 排名规则：分数降序，同分由 TieBreaker 决定 (返回负数表示 a 排在 b 前面)。
+ * limit <= 0 表示不限条数：全部保留，finish() 时整体堆排序。
+ */
+class TopK {
+
+    interface TieBreaker {
+        int compare(int ordA, int ordB);
+    }
+
+    private final int limit;
+    private final TieBreaker ties;
+
+    // 最小堆：堆顶是当前保留结果中排名最差的一个
+    private int[] ords;
+    private double[] scores;
+    private int size = 0;
+    private long offered = 0;
+    private boolean finished = false;
+
+    TopK(int limit, TieBreaker ties) {
+        this.limit = limit;
+        this.ties = ties;
+        int capacity = limit > 0 ? limit : 64;
+        this.ords = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    void offer(int ord, double score) {
+        offered++;
+        if (limit <= 0) {
+            // 不限条数时先顺序追加，finish() 再建堆
+            if (size == ords.length) grow();
+            ords[size] = ord;
+            scores[size] = score;
+            size++;
+        } else if (size < limit) {
+            ords[size] = ord;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (better(ord, score, ords[0], scores[0])) {
+            ords[0] = ord;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /** 合并另一个选择器的结果 (另一个须未 finish) */
+    void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) offer(other.ords[i], other.scores[i]);
+        offered += other.offered - other.size;
+    }
+
+    /**
+     * 原地堆排序，之后 ordinal(0) 为第一名
+     */
+    TopK finish() {
+        if (finished) return this;
+        if (limit <= 0) {
+            for (int i = size / 2 - 1; i >= 0; i--) siftDown(i, size);
+        }
+        // 反复把堆顶 (最差) 换到末尾，最终数组即为从好到差
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        finished = true;
+        return this;
+    }
+
+    int size() { return size; }
+    long offered() { return offered; }
+    int ordinal(int i) { return ords[i]; }
+    double score(int i) { return scores[i]; }
+
+    // a 是否排在 b 前面
+    private boolean better(int ordA, double scoreA, int ordB, double scoreB) {
+        if (scoreA != scoreB) return scoreA > scoreB;
+        return ties.compare(ordA, ordB) < 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(ords[parent], scores[parent], ords[i], scores[i])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= n) break;
+            int worst = left;
+            int right = left + 1;
+            if (right < n && better(ords[left], scores[left], ords[right], scores[right])) worst = right;
+            if (!better(ords[i], scores[i], ords[worst], scores[worst])) break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int o = ords[a]; ords[a] = ords[b]; ords[b] = o;
+        double s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+    }
+
+    private void grow() {
+        ords = Arrays.copyOf(ords, ords.length * 2);
+        scores = Arrays.copyOf(scores, scores.length * 2);
+    }
+}
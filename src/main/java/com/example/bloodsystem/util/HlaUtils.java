@@ -64,6 +64,13 @@ public class HlaUtils {
         return bannedGroups;
     }
 
+    /**
+     * 解析抗体字符串，返回去重并排序后的 Group 数组 (供倒排位图查询使用)
+     */
+    public static int[] parseAntibodyGroups(String rawInput) {
+        return parseAntibodies(rawInput).stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+    }
+
     /**
      * 判定是否冲突
      * 规则：只检查第一个数字 (Group)
@@ -103,6 +110,8 @@ public class HlaUtils {
         fillOne(d, d.getHlaA2(), "A2");
         fillOne(d, d.getHlaB1(), "B1");
         fillOne(d, d.getHlaB2(), "B2");
+        // HPA 打包编码，加载配型索引时只需读一个整数
+        d.setHpaCode(HpaCodec.pack(d.getGenotypesMap()));
     }
 
     private static void fillOne(Donor d, String raw, String type) {
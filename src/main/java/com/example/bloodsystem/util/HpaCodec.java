@@ -0,0 +1,70 @@
+package com.example.bloodsystem.util;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HPA 基因型编码
+ * 把 "aa" / "ab" / "bb" 这类字符串压缩成小整数，供内存索引与打分使用
+ */
+public class HpaCodec {
+
+    // 位点顺序固定，编码后的列按此顺序存放
+    public static final List<String> LOCI = List.of(
+            "HPA-1", "HPA-2", "HPA-3", "HPA-4", "HPA-5", "HPA-6", "HPA-10", "HPA-15", "HPA-21"
+    );
+
+    public static final byte UNKNOWN = 0; // 未检测 (null 或空串)
+    public static final byte AA = 1;
+    public static final byte AB = 2;
+    public static final byte BB = 3;
+    public static final byte OTHER = 4;   // 非标准写法，按原逻辑视为不匹配
+
+    private static final String[] VALUES = {null, "aa", "ab", "bb", null};
+
+    public static byte encode(String value) {
+        if (value == null || value.isEmpty()) return UNKNOWN;
+        switch (value) {
+            case "aa": return AA;
+            case "ab": return AB;
+            case "bb": return BB;
+            default: return OTHER;
+        }
+    }
+
+    /**
+     * 还原为字符串；UNKNOWN 与 OTHER 均返回 null
+     */
+    public static String decode(int code) {
+        if (code < 0 || code >= VALUES.length) return null;
+        return VALUES[code];
+    }
+
+    public static int locusIndex(String locus) {
+        return LOCI.indexOf(locus);
+    }
+
+    // --- 打包存储 (donors.hpa_code / patients.hpa_code) ---
+    // 每个位点 3 位，按 LOCI 顺序从低位排起，9 个位点共 27 位
+
+    public static final int BITS = 3;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * 把各位点基因型打包成一个整数；未填写的位点编码为 UNKNOWN
+     */
+    public static int pack(Map<String, String> genotypes) {
+        int packed = 0;
+        for (int i = 0; i < LOCI.size(); i++) {
+            packed |= encode(genotypes.get(LOCI.get(i))) << (i * BITS);
+        }
+        return packed;
+    }
+
+    /**
+     * 取出第 locus 个位点 (LOCI 中的下标) 的编码
+     */
+    public static byte unpack(int packed, int locus) {
+        return (byte) ((packed >>> (locus * BITS)) & MASK);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.bloodsystem.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关的小工具
+ */
+public class TransactionUtils {
+
+    /**
+     * 当前事务提交后执行 (没有事务时立即执行)，回滚时不执行
+     * 用于在数据提交后再更新内存中的索引与统计
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
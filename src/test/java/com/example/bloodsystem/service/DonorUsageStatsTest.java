@@ -0,0 +1,72 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.DonorUsage;
+import com.example.bloodsystem.repository.DonorUsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DonorUsageStatsTest {
+
+    // 模拟数据库中 D1 的被选中次数
+    private final AtomicInteger selections = new AtomicInteger(1);
+    private final DonorUsageRepository repository = mock(DonorUsageRepository.class);
+    private DonorUsageStats stats;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findAll(anyCollection())).thenAnswer(inv -> List.of(usage(selections.get())));
+        stats = new DonorUsageStats();
+        ReflectionTestUtils.setField(stats, "repository", repository);
+    }
+
+    @Test
+    void refreshKeepsUpdateCommittedDuringLoad() {
+        doAnswer(inv -> {
+            inv.<Consumer<DonorUsage>>getArgument(0).accept(usage(selections.get()));
+            return null;
+        }).doAnswer(inv -> {
+            // 整体加载读到旧行之后，本节点又提交了一次确认配型
+            DonorUsage stale = usage(selections.get());
+            selections.incrementAndGet();
+            stats.recordSelection("D1", LocalDateTime.now());
+            inv.<Consumer<DonorUsage>>getArgument(0).accept(stale);
+            return null;
+        }).when(repository).forEach(any());
+
+        assertThat(stats.get("D1").getSelectionCount()).isEqualTo(1);
+        stats.refresh();
+
+        assertThat(stats.get("D1").getSelectionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void refreshWithoutChangesKeepsVersion() {
+        doAnswer(inv -> {
+            inv.<Consumer<DonorUsage>>getArgument(0).accept(usage(selections.get()));
+            return null;
+        }).when(repository).forEach(any());
+
+        stats.get("D1");
+        long version = stats.version();
+        stats.refresh();
+
+        assertThat(stats.version()).isEqualTo(version);
+    }
+
+    private static DonorUsage usage(int selectionCount) {
+        DonorUsage u = new DonorUsage();
+        u.setDonorId("D1");
+        u.setSelectionCount(selectionCount);
+        return u;
+    }
+}
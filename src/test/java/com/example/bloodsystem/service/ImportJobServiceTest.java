@@ -0,0 +1,187 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.ImportJob;
+import com.example.bloodsystem.repository.DonorBulkRepository;
+import com.example.bloodsystem.repository.ImportJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImportJobServiceTest {
+
+    private static final int ROWS = 100_000;
+
+    @TempDir
+    Path spoolDir;
+
+    private ImportService importService;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ImportJobService jobService;
+    private ImportJobRepository jobRepository;
+    private ImportJob job;
+    private final List<Long> checkpoints = new CopyOnWriteArrayList<>();
+    private final List<String> savedStatuses = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DonorBulkRepository bulkRepository = mock(DonorBulkRepository.class);
+        // 写入较慢，中断时读取线程正处于背压等待中
+        doAnswer(inv -> {
+            Thread.sleep(20);
+            return null;
+        }).when(bulkRepository).upsertAll(anyList());
+        TransactionTemplate tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        importService = new ImportService();
+        ReflectionTestUtils.setField(importService, "bulkRepository", bulkRepository);
+        ReflectionTestUtils.setField(importService, "transactionTemplate", tx);
+        ReflectionTestUtils.setField(importService, "donorIndex", mock(DonorIndex.class));
+        ReflectionTestUtils.setField(importService, "changeFeed", mock(DonorChangeFeed.class));
+        ReflectionTestUtils.setField(importService, "registry", registry);
+        ReflectionTestUtils.setField(importService, "parseThreads", 2);
+        importService.start();
+
+        jobRepository = mock(ImportJobRepository.class);
+        when(jobRepository.save(any())).thenAnswer(inv -> {
+            job = inv.getArgument(0);
+            savedStatuses.add(job.getStatus());
+            return job;
+        });
+        when(jobRepository.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(job));
+        when(jobRepository.saveCheckpoint(anyString(), anyLong(), anyInt(), anyInt())).thenAnswer(inv -> {
+            checkpoints.add(inv.getArgument(1));
+            return 1;
+        });
+
+        jobService = new ImportJobService();
+        ReflectionTestUtils.setField(jobService, "importService", importService);
+        ReflectionTestUtils.setField(jobService, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(jobService, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(jobService, "leaseSeconds", 120L);
+        DonorChangeFeed changeFeed = mock(DonorChangeFeed.class);
+        when(changeFeed.nodeId()).thenReturn("node-a");
+        ReflectionTestUtils.setField(jobService, "changeFeed", changeFeed);
+        jobService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.stop();
+    }
+
+    @Test
+    void shutdownDuringImportKeepsJobRunningAtCheckpoint() throws Exception {
+        ImportResult status = jobService.submit(new ByteArrayInputStream(tsv(ROWS)), "donors.tsv");
+        waitUntil(() -> checkpoints.size() >= 2);
+
+        long start = System.nanoTime();
+        // 与进程退出时相同：shutdownNow 中断导入线程
+        jobService.stop();
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(jobService, "executor");
+        assertThat(executor.isTerminated()).isTrue();
+        // 随后关闭的 ImportService 不应再把任务变成失败
+        importService.stop();
+
+        assertThat(savedStatuses).doesNotContain(ImportJob.FAILED, ImportJob.COMPLETED, ImportJob.CANCELLED);
+        assertThat(job.getStatus()).isEqualTo(ImportJob.RUNNING);
+        assertThat(status.getStatus()).isEqualTo(ImportJob.RUNNING);
+        assertThat(status.getErrorMessages()).isEmpty();
+
+        // 检查点单调前进、停在中途，且与已提交的行数一致
+        assertThat(checkpoints).isSorted();
+        long last = checkpoints.get(checkpoints.size() - 1);
+        assertThat(last).isLessThan(ROWS);
+        assertThat(status.getCheckpointLine()).isEqualTo(last);
+        assertThat(status.getSuccessCount()).isEqualTo(checkpoints.size() * 1000);
+        // 上传文件保留，供下次启动续传
+        assertThat(Files.exists(Path.of(job.getSpoolPath()))).isTrue();
+    }
+
+    @Test
+    void resumeOnlyTakesOwnOrExpiredJobs() throws Exception {
+        Path spool = Files.write(spoolDir.resolve("x.upload"), tsv(10));
+        ImportJob own = job("own", "node-a", LocalDateTime.now().plusMinutes(1), spool);
+        ImportJob leased = job("leased", "node-b", LocalDateTime.now().plusMinutes(1), spool);
+        ImportJob expired = job("expired", "node-b", LocalDateTime.now().minusMinutes(1), spool);
+        ImportJob noFile = job("nofile", "node-b", LocalDateTime.now().minusMinutes(1), spoolDir.resolve("missing"));
+        when(jobRepository.findByStatusIn(anyCollection())).thenReturn(List.of(own, leased, expired, noFile));
+        when(jobRepository.claim(anyString(), anyString(), any(), any())).thenReturn(1);
+
+        jobService.resumeInterrupted();
+
+        // 其他节点仍持有的任务、上传文件不可见的任务都不认领，也不会被标记为失败
+        verify(jobRepository).claim(eq("own"), eq("node-a"), any(), any());
+        verify(jobRepository).claim(eq("expired"), eq("node-a"), any(), any());
+        verify(jobRepository, never()).claim(eq("leased"), anyString(), any(), any());
+        verify(jobRepository, never()).claim(eq("nofile"), anyString(), any(), any());
+        assertThat(jobService.getStatus("own")).isNotNull();
+        assertThat(jobService.getStatus("expired")).isNotNull();
+    }
+
+    @Test
+    void interruptedTextImportStopsWithoutError() throws Exception {
+        ImportResult[] result = new ImportResult[1];
+        Thread t = new Thread(() -> result[0] = importService.parseAndImport(
+                new StringReader(new String(tsv(ROWS), StandardCharsets.UTF_8)), '\t'));
+        t.start();
+        waitUntil(() -> registry.counter("import.rows", "result", "imported").count() >= 2000);
+        t.interrupt();
+        t.join(5000);
+
+        assertThat(t.isAlive()).isFalse();
+        assertThat(result[0].getErrorMessages()).isEmpty();
+        assertThat(result[0].getSuccessCount()).isLessThan(ROWS).isPositive();
+    }
+
+    private static ImportJob job(String jobId, String owner, LocalDateTime leaseUntil, Path spool) {
+        ImportJob j = new ImportJob();
+        j.setJobId(jobId);
+        j.setFilename(jobId + ".tsv");
+        j.setStatus(ImportJob.RUNNING);
+        j.setOwnerNode(owner);
+        j.setLeaseUntil(leaseUntil);
+        j.setSpoolPath(spool.toString());
+        return j;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("等待超时").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] tsv(int rows) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            sb.append("供者").append(i).append('\t').append("T").append(i)
+                    .append("\taa\tab\tbb\taa\tab\tbb\taa\tab\tbb\t02\t11\t07\t15\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
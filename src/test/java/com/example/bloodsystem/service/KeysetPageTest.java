@@ -0,0 +1,78 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeysetPageTest {
+
+    // 与供者列表一致：按 ID 倒序
+    private static final Comparator<String> DESC = Comparator.reverseOrder();
+
+    // 序号 0..9 对应 ID "D0".."D9"，位图中的顺序与列表顺序无关
+    private static final RoaringBitmap HITS = RoaringBitmap.bitmapOf(3, 0, 7, 1, 9, 4, 8, 2, 6, 5);
+    private static final IntFunction<String> ID = ord -> "D" + ord;
+
+    @Test
+    void firstPageFromStart() {
+        assertThat(seek(null, false, 3)).containsExactly("D9", "D8", "D7");
+    }
+
+    @Test
+    void forwardSeekStartsAfterBound() {
+        assertThat(seek("D7", false, 3)).containsExactly("D6", "D5", "D4");
+        // 边界本身已被删除时，从紧随其后的一条开始
+        assertThat(seek("D65", false, 2)).containsExactly("D6", "D5");
+        assertThat(seek("D2", false, 5)).containsExactly("D1", "D0");
+        assertThat(seek("D0", false, 5)).isEmpty();
+    }
+
+    @Test
+    void backwardSeekReturnsRowsJustBeforeBound() {
+        // 与向前翻页的数据库查询一致：按升序返回，由 KeysetPage.of 反转
+        assertThat(seek("D4", true, 3)).containsExactly("D5", "D6", "D7");
+        assertThat(seek("D7", true, 5)).containsExactly("D8", "D9");
+        assertThat(seek("D9", true, 5)).isEmpty();
+        assertThat(seek("D65", true, 2)).containsExactly("D7", "D8");
+    }
+
+    @Test
+    void forwardThenBackwardReturnsSamePage() {
+        List<String> first = seek(null, false, 4);
+        List<String> second = seek(first.get(first.size() - 1), false, 4);
+        List<String> back = seek(second.get(0), true, 4);
+        assertThat(back).containsExactly("D6", "D7", "D8", "D9");
+        assertThat(first).containsExactly("D9", "D8", "D7", "D6");
+    }
+
+    @Test
+    void pageCursorsFromExtraRow() {
+        // 第一页：多取的一条说明还有下一页，没有上一页
+        KeysetPage<String> first = KeysetPage.of(List.of("D9", "D8", "D7", "D6"), 3, null, s -> s);
+        assertThat(first.getItems()).containsExactly("D9", "D8", "D7");
+        assertThat(first.getPrevCursor()).isNull();
+        assertThat(KeysetCursor.parse(first.getNextCursor()).key).isEqualTo("D7");
+
+        // 向前翻页：升序结果反转回列表顺序，后面必然还有
+        KeysetCursor prev = KeysetCursor.parse(KeysetCursor.prev("D4"));
+        KeysetPage<String> back = KeysetPage.of(List.of("D5", "D6"), 3, prev, s -> s);
+        assertThat(back.getItems()).containsExactly("D6", "D5");
+        assertThat(back.getPrevCursor()).isNull();
+        assertThat(KeysetCursor.parse(back.getNextCursor()).key).isEqualTo("D5");
+
+        // 最后一页
+        KeysetCursor next = KeysetCursor.parse(KeysetCursor.next("D2"));
+        KeysetPage<String> last = KeysetPage.of(List.of("D1", "D0"), 3, next, s -> s);
+        assertThat(last.getNextCursor()).isNull();
+        assertThat(KeysetCursor.parse(last.getPrevCursor()).key).isEqualTo("D1");
+    }
+
+    private static List<String> seek(String bound, boolean backward, int limit) {
+        return KeysetPage.seek(HITS.getIntIterator(), ID, DESC, bound, backward, limit);
+    }
+}
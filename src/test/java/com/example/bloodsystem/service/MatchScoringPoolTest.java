@@ -0,0 +1,92 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MatchScoringPoolTest {
+
+    private static final TopK.TieBreaker BY_ORD = Integer::compare;
+
+    private MatchScoringPool pool;
+    private RoaringBitmap candidates;
+    private IntToDoubleFunction scorer;
+
+    @BeforeEach
+    void setUp() {
+        pool = new MatchScoringPool();
+        ReflectionTestUtils.setField(pool, "threads", 4);
+        ReflectionTestUtils.setField(pool, "threshold", 1000);
+        // 块很小，保证切出大量子任务并逐级合并
+        ReflectionTestUtils.setField(pool, "chunkSize", 256);
+        pool.start();
+
+        Random random = new Random(42);
+        candidates = new RoaringBitmap();
+        for (int i = 0; i < 200_000; i++) {
+            if (random.nextInt(3) != 0) candidates.add(i);
+        }
+        // 分数只有少数几档，排名大量依赖同分规则
+        scorer = ord -> (ord * 2654435761L >>> 7) % 13;
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.stop();
+    }
+
+    @Test
+    void parallelRankingEqualsSerial() {
+        assertThat(pool.shouldParallelize(candidates)).isTrue();
+        for (int limit : new int[]{1, 50, 5000, 0}) {
+            TopK parallel = pool.score(candidates, limit, BY_ORD, scorer).finish();
+            TopK serial = serial(limit, scorer).finish();
+
+            assertThat(parallel.size()).isEqualTo(serial.size());
+            assertThat(parallel.offered()).isEqualTo(candidates.getLongCardinality());
+            for (int i = 0; i < serial.size(); i++) {
+                assertThat(parallel.ordinal(i)).as("limit %d rank %d", limit, i).isEqualTo(serial.ordinal(i));
+                assertThat(parallel.score(i)).isEqualTo(serial.score(i));
+            }
+        }
+    }
+
+    @Test
+    void batchScoringKeepsEachSelectorSeparate() {
+        IntToDoubleFunction other = ord -> ord % 7;
+        TopK[] tops = pool.scoreBatch(candidates,
+                () -> new TopK[]{new TopK(100, BY_ORD), new TopK(100, BY_ORD)},
+                (ord, t) -> {
+                    t[0].offer(ord, scorer.applyAsDouble(ord));
+                    t[1].offer(ord, other.applyAsDouble(ord));
+                });
+
+        TopK first = tops[0].finish();
+        TopK second = tops[1].finish();
+        TopK expectedFirst = serial(100, scorer).finish();
+        TopK expectedSecond = serial(100, other).finish();
+        for (int i = 0; i < 100; i++) {
+            assertThat(first.ordinal(i)).isEqualTo(expectedFirst.ordinal(i));
+            assertThat(second.ordinal(i)).isEqualTo(expectedSecond.ordinal(i));
+        }
+    }
+
+    @Test
+    void belowThresholdStaysSerial() {
+        assertThat(pool.shouldParallelize(RoaringBitmap.bitmapOf(1, 2, 3))).isFalse();
+        assertThat(pool.score(new RoaringBitmap(), 10, BY_ORD, scorer).size()).isZero();
+    }
+
+    private TopK serial(int limit, IntToDoubleFunction scorer) {
+        TopK top = new TopK(limit, BY_ORD);
+        candidates.forEach((int ord) -> top.offer(ord, scorer.applyAsDouble(ord)));
+        return top;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NgramIndexTest {
+
+    @Test
+    void singleCharacterKeyword() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, "张三", "D001");
+        index.put(1, "李四", "D002");
+        index.put(2, "张小明", "P003");
+
+        assertThat(ords(index.search("张"))).containsExactly(0, 2);
+        assertThat(ords(index.search("四"))).containsExactly(1);
+        assertThat(ords(index.search("王"))).isEmpty();
+    }
+
+    @Test
+    void twoCharacterKeyword() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, "张三丰");
+        index.put(1, "三张");
+        index.put(2, "张三");
+
+        assertThat(ords(index.search("张三"))).containsExactly(0, 2);
+        // 两个字都出现但顺序不同，不算包含
+        assertThat(ords(index.search("三张"))).containsExactly(1);
+    }
+
+    @Test
+    void longerKeywordMustBeContiguous() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, "abcd");
+        // 含有 ab、bc、cd 三个两字 n-gram，但不含 abcd
+        index.put(1, "abxbcxcd");
+        index.put(2, "xxabcdxx");
+
+        assertThat(ords(index.search("abcd"))).containsExactly(0, 2);
+        assertThat(ords(index.search("bcd"))).containsExactly(0, 2);
+    }
+
+    @Test
+    void caseInsensitiveLikeSql() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, "Wang", "D00ab");
+
+        assertThat(ords(index.search("WANG"))).containsExactly(0);
+        assertThat(ords(index.search("d00AB"))).containsExactly(0);
+        assertThat(ords(index.search("w"))).containsExactly(0);
+    }
+
+    @Test
+    void matchesDoNotCrossFieldSeparator() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, "ab", "cd");
+
+        assertThat(ords(index.search("b"))).containsExactly(0);
+        assertThat(ords(index.search("c"))).containsExactly(0);
+        assertThat(ords(index.search("bc"))).isEmpty();
+        assertThat(ords(index.search("abc"))).isEmpty();
+        assertThat(ords(index.search("b\u0000c"))).isEmpty();
+    }
+
+    @Test
+    void nullAndEmptyFieldsAreSkipped() {
+        NgramIndex index = new NgramIndex();
+        index.put(0, null, "ab", "", "cd");
+
+        assertThat(ords(index.search("ab"))).containsExactly(0);
+        assertThat(ords(index.search("cd"))).containsExactly(0);
+        assertThat(ords(index.search("bc"))).isEmpty();
+        assertThat(ords(index.search(""))).isEmpty();
+        assertThat(ords(index.search(null))).isEmpty();
+    }
+
+    @Test
+    void putReplacesAndRemoveDeletes() {
+        NgramIndex index = new NgramIndex();
+        index.put(5, "张三");
+        index.put(5, "李四");
+        assertThat(ords(index.search("张"))).isEmpty();
+        assertThat(ords(index.search("李四"))).containsExactly(5);
+
+        index.remove(5);
+        assertThat(ords(index.search("李"))).isEmpty();
+        assertThat(ords(index.search("四"))).isEmpty();
+        // 序号超出当前容量时自动扩容
+        index.put(5000, "王五");
+        assertThat(ords(index.search("王五"))).containsExactly(5000);
+    }
+
+    @Test
+    void agreesWithSubstringSearch() {
+        Random random = new Random(7);
+        String alphabet = "张王李赵三四小明aBc1";
+        NgramIndex index = new NgramIndex();
+        List<String> texts = new ArrayList<>();
+        for (int ord = 0; ord < 2000; ord++) {
+            String name = randomText(random, alphabet, 1 + random.nextInt(4));
+            String id = randomText(random, alphabet, 2 + random.nextInt(4));
+            index.put(ord, name, id);
+            texts.add(name.toLowerCase(Locale.ROOT) + "\u0000" + id.toLowerCase(Locale.ROOT));
+        }
+        for (int i = 0; i < 500; i++) {
+            String kw = randomText(random, alphabet, 1 + random.nextInt(4));
+            String lower = kw.toLowerCase(Locale.ROOT);
+            List<Integer> expected = new ArrayList<>();
+            for (int ord = 0; ord < texts.size(); ord++) {
+                if (texts.get(ord).contains(lower)) expected.add(ord);
+            }
+            assertThat(ords(index.search(kw))).as(kw).isEqualTo(expected);
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    private static List<Integer> ords(RoaringBitmap bitmap) {
+        List<Integer> ords = new ArrayList<>();
+        bitmap.forEach((int ord) -> ords.add(ord));
+        return ords;
+    }
+}
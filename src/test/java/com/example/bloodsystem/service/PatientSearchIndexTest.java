@@ -0,0 +1,91 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientSearchIndexTest {
+
+    // 模拟 patients 表：ID -> 姓名
+    private final Map<String, String> table = new TreeMap<>();
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private PatientSearchIndex index;
+    // 整体加载读到一半时执行 (模拟并发提交)
+    private Runnable duringLoad;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        table.put("P1", "张三");
+        doAnswer(inv -> {
+            Map<String, String> snapshot = new TreeMap<>(table);
+            if (duringLoad != null) {
+                Runnable r = duringLoad;
+                duringLoad = null;
+                r.run();
+            }
+            emit(snapshot, inv.getArgument(1));
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class));
+        doAnswer(inv -> {
+            Map<String, String> rows = new TreeMap<>();
+            for (Object id : inv.getArgument(2, Object[].class)) {
+                if (table.containsKey(id)) rows.put((String) id, table.get(id));
+            }
+            emit(rows, inv.getArgument(1));
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        index = new PatientSearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+    }
+
+    @Test
+    void refreshKeepsPatientsWrittenDuringLoad() {
+        assertThat(index.count()).isEqualTo(1);
+        duringLoad = () -> {
+            table.put("P2", "李四");
+            index.upsertAfterCommit(patient("P2", "李四"));
+            table.remove("P1");
+            index.removeAfterCommit("P1");
+        };
+
+        index.refresh();
+
+        assertThat(ids("李四")).containsExactly("P2");
+        assertThat(ids("张三")).isEmpty();
+        assertThat(index.count()).isEqualTo(1);
+    }
+
+    private List<String> ids(String keyword) {
+        return index.search(keyword, null, null, false, 10).patientIds;
+    }
+
+    private static void emit(Map<String, String> rows, RowCallbackHandler handler) throws SQLException {
+        for (Map.Entry<String, String> row : rows.entrySet()) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString(1)).thenReturn(row.getKey());
+            when(rs.getString(2)).thenReturn(row.getValue());
+            handler.processRow(rs);
+        }
+    }
+
+    private static Patient patient(String id, String name) {
+        Patient p = new Patient();
+        p.setPatientId(id);
+        p.setName(name);
+        p.setCreatedAt(LocalDateTime.now());
+        return p;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKTest {
+
+    // 同分时序号小的排前面
+    private static final TopK.TieBreaker BY_ORD = Integer::compare;
+
+    private static final Comparator<int[]> RANK = Comparator
+            .<int[]>comparingInt(e -> -e[1])
+            .thenComparingInt(e -> e[0]);
+
+    @Test
+    void keepsBestScoresInRankOrder() {
+        int[][] data = randomData(5000, 20, 1L);
+        TopK top = new TopK(100, BY_ORD);
+        for (int[] e : data) top.offer(e[0], e[1]);
+        top.finish();
+
+        assertThat(ranked(top)).isEqualTo(expected(data, 100));
+        assertThat(top.offered()).isEqualTo(5000);
+    }
+
+    @Test
+    void unlimitedKeepsEverything() {
+        int[][] data = randomData(300, 5, 2L);
+        TopK top = new TopK(0, BY_ORD);
+        for (int[] e : data) top.offer(e[0], e[1]);
+        top.finish();
+
+        assertThat(ranked(top)).isEqualTo(expected(data, data.length));
+    }
+
+    @Test
+    void fewerCandidatesThanLimit() {
+        TopK top = new TopK(10, BY_ORD);
+        top.offer(7, 50);
+        top.offer(3, 80);
+        top.offer(5, 50);
+        top.finish();
+
+        assertThat(ranked(top)).containsExactly("3:80", "5:50", "7:50");
+    }
+
+    @Test
+    void mergeMatchesSingleSelector() {
+        int[][] data = randomData(4000, 10, 3L);
+        TopK left = new TopK(50, BY_ORD);
+        TopK right = new TopK(50, BY_ORD);
+        for (int i = 0; i < data.length; i++) {
+            (i % 3 == 0 ? left : right).offer(data[i][0], data[i][1]);
+        }
+        left.merge(right);
+        left.finish();
+
+        assertThat(ranked(left)).isEqualTo(expected(data, 50));
+        assertThat(left.offered()).isEqualTo(4000);
+    }
+
+    @Test
+    void finishIsIdempotent() {
+        TopK top = new TopK(3, BY_ORD);
+        for (int i = 0; i < 10; i++) top.offer(i, i % 4);
+        List<String> first = ranked(top.finish());
+        assertThat(ranked(top.finish())).isEqualTo(first);
+    }
+
+    // 分数范围很小，保证大量同分
+    private static int[][] randomData(int n, int maxScore, long seed) {
+        Random random = new Random(seed);
+        return IntStream.range(0, n)
+                .mapToObj(i -> new int[]{i, random.nextInt(maxScore)})
+                .toArray(int[][]::new);
+    }
+
+    private static List<String> expected(int[][] data, int limit) {
+        return Arrays.stream(data)
+                .sorted(RANK)
+                .limit(limit)
+                .map(e -> e[0] + ":" + e[1])
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> ranked(TopK top) {
+        return IntStream.range(0, top.size())
+                .mapToObj(i -> top.ordinal(i) + ":" + (int) top.score(i))
+                .collect(Collectors.toList());
+    }
+}